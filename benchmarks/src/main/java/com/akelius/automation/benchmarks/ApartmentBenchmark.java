@@ -0,0 +1,64 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.akelius.automation.data.Apartment;
+
+/** Measures Apartment.hashCode and Apartment.equals, used when checking for duplicates. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-DexecutionMode=LOCAL", "-Dbrowser=chrome"})
+@State(Scope.Thread)
+public class ApartmentBenchmark {
+
+  private final Apartment apartment = newApartment();
+  private final Apartment equalApartment = newApartment();
+
+  @Benchmark
+  public int hashCodeOfApartment() {
+    return apartment.hashCode();
+  }
+
+  @Benchmark
+  public boolean equalsOfEqualApartments() {
+    return apartment.equals(equalApartment);
+  }
+
+  private static Apartment newApartment() {
+    // new String() so the two apartments don't share the same String instances
+    return new Apartment(
+        new String("Bright apartment close to the park"),
+        new String("Example Street 12 10115 Berlin"),
+        new String("2"),
+        65,
+        new String("3. floor"),
+        1250,
+        new String("01.03.2020"));
+  }
+}
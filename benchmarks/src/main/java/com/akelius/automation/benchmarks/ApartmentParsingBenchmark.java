@@ -0,0 +1,71 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.akelius.automation.components.ApartmentSearchResultComponent;
+import com.akelius.automation.data.Apartment;
+
+/** Measures how long it takes to turn the raw text of the apartment cards into Apartments. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-DexecutionMode=LOCAL", "-Dbrowser=chrome"})
+@State(Scope.Thread)
+public class ApartmentParsingBenchmark {
+
+  @Param({"10", "100", "1000"})
+  private int cards;
+
+  private List<List<String>> rows;
+
+  @Setup
+  public void setUp() {
+    rows = new ArrayList<>(cards);
+    for (int i = 0; i < cards; i++) {
+      rows.add(
+          Arrays.asList(
+              "  Apartment " + i + "  ",
+              "Example Street " + i + "\n10115 Berlin",
+              "rooms " + (1 + i % 4),
+              (40 + i % 60) + " m²",
+              (i % 6) + ". floor",
+              "€ 1." + (100 + i % 900),
+              "available from 01.0" + (1 + i % 9) + ".2020"));
+    }
+  }
+
+  @Benchmark
+  public List<Apartment> parseApartments() {
+    return ApartmentSearchResultComponent.parseApartments(rows);
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.akelius.automation.components.ApartmentSearchResultComponent;
+import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.ApartmentBatch;
+import com.akelius.automation.data.ApartmentDuplicateIndex;
+import com.akelius.automation.data.CompactApartment;
+import com.akelius.automation.pages.LandingPage;
+import com.akelius.automation.server.SyntheticListings;
+
+/**
+ * Measures how the handling of the search results scales with the number of cards: parsing the
+ * extracted card texts into Apartments, checking them for duplicates and converting them to the
+ * compact forms. Run it with {@code -prof gc} to also get the bytes allocated per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-Xmx2g", "-DexecutionMode=LOCAL", "-Dbrowser=chrome"})
+@State(Scope.Thread)
+public class ListingScalingBenchmark {
+
+  @Param({"1000", "10000", "100000"})
+  private int cards;
+
+  @Param({"0.05"})
+  private double duplicateRate;
+
+  private List<List<String>> rows;
+  private List<Apartment> apartments;
+
+  @Setup
+  public void setUp() {
+    rows = new ArrayList<>(cards);
+    for (Apartment apartment :
+        new SyntheticListings().duplicateRate(duplicateRate).generate(cards)) {
+      rows.add(SyntheticListings.toCardTexts(apartment));
+    }
+    apartments = ApartmentSearchResultComponent.parseApartments(rows);
+  }
+
+  @Benchmark
+  public List<Apartment> extraction() {
+    return ApartmentSearchResultComponent.parseApartments(rows);
+  }
+
+  @Benchmark
+  public ApartmentDuplicateIndex dedup() {
+    return LandingPage.indexApartments(apartments);
+  }
+
+  @Benchmark
+  public List<CompactApartment> compact() {
+    return apartments.stream().map(CompactApartment::of).collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public ApartmentBatch batch() {
+    return ApartmentBatch.of(apartments);
+  }
+}
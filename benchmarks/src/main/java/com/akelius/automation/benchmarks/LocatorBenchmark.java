@@ -0,0 +1,95 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.benchmarks;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.FindBy;
+
+import com.akelius.automation.core.LocatorRegistry;
+
+/**
+ * Measures the dynamic locator resolution of the page objects. The legacy benchmarks replay the
+ * reflection lookup that PageObject did on every call before the locators were cached.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-DexecutionMode=LOCAL", "-Dbrowser=chrome"})
+@State(Scope.Thread)
+public class LocatorBenchmark {
+
+  private int index = 3;
+
+  @Benchmark
+  public By registryWithoutVariables() {
+    return LocatorRegistry.getLocator(SamplePage.class, "changeLanguageButton").resolve();
+  }
+
+  @Benchmark
+  public By registryWithVariables() {
+    return LocatorRegistry.getLocator(SamplePage.class, "apartmentTitle").resolve(index);
+  }
+
+  @Benchmark
+  public By legacyReflectionWithoutVariables() {
+    return By.xpath(getXPathAnnotationValue(SamplePage.class, "changeLanguageButton"));
+  }
+
+  @Benchmark
+  public By legacyReflectionWithVariables() {
+    return By.xpath(
+        String.format(getXPathAnnotationValue(SamplePage.class, "apartmentTitle"), index));
+  }
+
+  /** The lookup PageObject used to do, kept here as the baseline. */
+  private static String getXPathAnnotationValue(Class<?> clazz, String memberVariableName) {
+    return getFieldValue(clazz, memberVariableName).getDeclaredAnnotation(FindBy.class).xpath();
+  }
+
+  private static Field getFieldValue(Class<?> clazz, String memberVariableName) {
+    try {
+      return clazz.getDeclaredField(memberVariableName);
+    } catch (NoSuchFieldException e) {
+      return getFieldValue(clazz.getSuperclass(), memberVariableName);
+    }
+  }
+
+  /** A page with a parent class, like the page objects that extend PageObject. */
+  public static class BasePage {
+
+    @FindBy(xpath = "//button[@aria-label='Language']")
+    protected WebElement changeLanguageButton;
+  }
+
+  public static class SamplePage extends BasePage {
+
+    @FindBy(xpath = "//app-unit-item[%s]//h3")
+    private WebElement apartmentTitle;
+  }
+}
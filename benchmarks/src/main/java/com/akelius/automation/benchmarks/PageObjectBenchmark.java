@@ -0,0 +1,66 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.akelius.automation.components.ContactFormComponent;
+import com.akelius.automation.core.DriverManager;
+import com.akelius.automation.pages.LandingPage;
+
+/**
+ * Measures the cost of creating page objects: the page loading waits, the performance budget
+ * checks and PageFactory.initElements, against a stub driver that answers right away.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-DexecutionMode=LOCAL", "-Dbrowser=chrome"})
+@State(Scope.Thread)
+public class PageObjectBenchmark {
+
+  @Setup
+  public void setUp() {
+    DriverManager.setDriver(new StubWebDriver());
+  }
+
+  @TearDown
+  public void tearDown() {
+    DriverManager.quitDriver();
+  }
+
+  @Benchmark
+  public LandingPage createLandingPage() {
+    return new LandingPage();
+  }
+
+  @Benchmark
+  public ContactFormComponent createContactFormComponent() {
+    return new ContactFormComponent();
+  }
+}
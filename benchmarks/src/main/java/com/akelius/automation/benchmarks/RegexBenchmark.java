@@ -0,0 +1,56 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.akelius.automation.data.TestData;
+import com.akelius.automation.util.Helper;
+
+/** Measures extracting the apartment id from a detail page URL. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-DexecutionMode=LOCAL", "-Dbrowser=chrome"})
+@State(Scope.Thread)
+public class RegexBenchmark {
+
+  private final String url = TestData.LANDING_PAGE + "en_UK/detail/1234-567-8";
+
+  @Benchmark
+  public String extractGroupFromRegex() {
+    return Helper.extractGroupFromRegex(TestData.APARTMENT_ID_REGEX, url);
+  }
+
+  /** What Helper.extractGroupFromRegex used to do before the patterns were cached. */
+  @Benchmark
+  public String compileOnEveryCall() {
+    Matcher matcher = Pattern.compile(TestData.APARTMENT_ID_REGEX).matcher(url);
+    return matcher.find() ? matcher.group(1) : null;
+  }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import com.akelius.automation.data.TestData;
+
+/**
+ * A WebDriver that doesn't talk to any browser. Every lookup returns the same visible element and
+ * every script succeeds right away, so the benchmarks only measure the Java side of the framework.
+ */
+public class StubWebDriver implements WebDriver, JavascriptExecutor {
+
+  private final WebElement element = new StubWebElement("Stub text");
+  private List<List<String>> apartmentRows = Collections.emptyList();
+
+  /**
+   * @param apartmentRows The raw texts returned when the framework extracts the apartment search
+   *     results.
+   */
+  public void setApartmentRows(List<List<String>> apartmentRows) {
+    this.apartmentRows = apartmentRows;
+  }
+
+  @Override
+  public Object executeScript(String script, Object... args) {
+    if (TestData.EXTRACT_ELEMENTS_TEXT_SCRIPT.equals(script)) {
+      return apartmentRows;
+    } else if (TestData.COLLECT_TIMING_ENTRIES_SCRIPT.equals(script)) {
+      return Collections.emptyList();
+    } else if (TestData.WAIT_FOR_PAGE_LOADING.equals(script)) {
+      return TestData.COMPLETE_STATE;
+    }
+    return null;
+  }
+
+  @Override
+  public Object executeAsyncScript(String script, Object... args) {
+    // all the async scripts of the framework resolve with true when the page is ready
+    return Boolean.TRUE;
+  }
+
+  @Override
+  public void get(String url) {}
+
+  @Override
+  public String getCurrentUrl() {
+    return TestData.LANDING_PAGE;
+  }
+
+  @Override
+  public String getTitle() {
+    return "";
+  }
+
+  @Override
+  public List<WebElement> findElements(By by) {
+    return Collections.singletonList(element);
+  }
+
+  @Override
+  public WebElement findElement(By by) {
+    return element;
+  }
+
+  @Override
+  public String getPageSource() {
+    return "";
+  }
+
+  @Override
+  public void close() {}
+
+  @Override
+  public void quit() {}
+
+  @Override
+  public Set<String> getWindowHandles() {
+    return Collections.singleton(getWindowHandle());
+  }
+
+  @Override
+  public String getWindowHandle() {
+    return "stub";
+  }
+
+  @Override
+  public TargetLocator switchTo() {
+    throw new UnsupportedOperationException("The stub driver has no windows to switch to.");
+  }
+
+  @Override
+  public Navigation navigate() {
+    throw new UnsupportedOperationException("The stub driver can't navigate.");
+  }
+
+  @Override
+  public Options manage() {
+    throw new UnsupportedOperationException("The stub driver has no options.");
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+/** A visible element with a fixed text, so element lookups and waits return right away. */
+public class StubWebElement implements WebElement {
+
+  private final String text;
+
+  public StubWebElement(String text) {
+    this.text = text;
+  }
+
+  @Override
+  public void click() {}
+
+  @Override
+  public void submit() {}
+
+  @Override
+  public void sendKeys(CharSequence... keysToSend) {}
+
+  @Override
+  public void clear() {}
+
+  @Override
+  public String getTagName() {
+    return "div";
+  }
+
+  @Override
+  public String getAttribute(String name) {
+    return null;
+  }
+
+  @Override
+  public boolean isSelected() {
+    return false;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  public String getText() {
+    return text;
+  }
+
+  @Override
+  public List<WebElement> findElements(By by) {
+    return Collections.singletonList(this);
+  }
+
+  @Override
+  public WebElement findElement(By by) {
+    return this;
+  }
+
+  @Override
+  public boolean isDisplayed() {
+    return true;
+  }
+
+  @Override
+  public Point getLocation() {
+    return new Point(0, 0);
+  }
+
+  @Override
+  public Dimension getSize() {
+    return new Dimension(100, 20);
+  }
+
+  @Override
+  public Rectangle getRect() {
+    return new Rectangle(getLocation(), getSize());
+  }
+
+  @Override
+  public String getCssValue(String propertyName) {
+    return "";
+  }
+
+  @Override
+  public <X> X getScreenshotAs(OutputType<X> target) throws WebDriverException {
+    throw new UnsupportedOperationException("The stub element can't take screenshots.");
+  }
+}
@@ -12,14 +12,25 @@
  */
 package com.akelius.automation.components;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 
 import com.akelius.automation.core.PageObject;
 import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.TestData;
 import com.akelius.automation.pages.ApartmentPage;
+import com.akelius.automation.util.Helper;
 
 /**
  * There is a limitation with the built-in Page object model in Selenium and we can't use it in this
@@ -39,6 +50,24 @@ public class ApartmentSearchResultComponent extends PageObject {
       "//div[@class='group ng-star-inserted']/div[2]";
   private static final String AVAILABLE_FROM_ELEMENT_LOCATOR =
       "//div[@class='group available-from']";
+  static final String DETAIL_LINK_HREF_LOCATOR = "//a[contains(@href, 'detail/')]/@href";
+
+  /** The locators of the fields of an apartment, in the order of the Apartment constructor. */
+  static final List<String> FIELD_LOCATORS =
+      Arrays.asList(
+          TITLE_ELEMENT_LOCTOR,
+          ADDRESS_ELEMENT_LOCATOR,
+          ROOMS_ELEMENT_LOCATOR,
+          SIZE_ELEMENT_LOCATOR,
+          FLOOR_ELEMENT_LOCATOR,
+          RENT_ELEMENT_LOCATOR,
+          AVAILABLE_FROM_ELEMENT_LOCATOR);
+
+  /** The locators extracted for each card: the fields, then the optional link to the details. */
+  static final List<String> EXTRACTED_LOCATORS =
+      Collections.unmodifiableList(
+          Stream.concat(FIELD_LOCATORS.stream(), Stream.of(DETAIL_LINK_HREF_LOCATOR))
+              .collect(Collectors.toList()));
 
   public ApartmentSearchResultComponent(String baseComponent) {
     this.baseComponent = baseComponent;
@@ -56,55 +85,35 @@ public class ApartmentSearchResultComponent extends PageObject {
   }
 
   public String getTitleText() {
-    return getTitle().getText().trim();
+    return parseTitle(getTitle().getText());
   }
 
   public String getAddressText() {
-    return driver
-        .findElement(By.xpath(baseComponent + ADDRESS_ELEMENT_LOCATOR))
-        .getText()
-        .trim()
-        .replace("\n", " ");
+    return parseAddress(
+        driver.findElement(By.xpath(baseComponent + ADDRESS_ELEMENT_LOCATOR)).getText());
   }
 
   public String getRoomText() {
-    return driver
-        .findElement(By.xpath(baseComponent + ROOMS_ELEMENT_LOCATOR))
-        .getText()
-        .trim()
-        .split(" ")[1];
+    return parseRooms(
+        driver.findElement(By.xpath(baseComponent + ROOMS_ELEMENT_LOCATOR)).getText());
   }
 
   public int getSizeInMeterSquare() {
-    return Integer.valueOf(
-        driver
-            .findElement(By.xpath(baseComponent + SIZE_ELEMENT_LOCATOR))
-            .getText()
-            .trim()
-            .split(" ")[0]);
+    return parseSize(driver.findElement(By.xpath(baseComponent + SIZE_ELEMENT_LOCATOR)).getText());
   }
 
   public String getFloorText() {
-    return driver.findElement(By.xpath(baseComponent + FLOOR_ELEMENT_LOCATOR)).getText().trim();
+    return parseFloor(
+        driver.findElement(By.xpath(baseComponent + FLOOR_ELEMENT_LOCATOR)).getText());
   }
 
   public int getRentAmount() {
-    return Integer.valueOf(
-        driver
-            .findElement(By.xpath(baseComponent + RENT_ELEMENT_LOCATOR))
-            .getText()
-            .trim()
-            .split(" ")[1]
-            .replace(".", ""));
+    return parseRent(driver.findElement(By.xpath(baseComponent + RENT_ELEMENT_LOCATOR)).getText());
   }
 
   public String getAvailableFromDateText() {
-    return driver
-        .findElement(By.xpath(baseComponent + AVAILABLE_FROM_ELEMENT_LOCATOR))
-        .getText()
-        .trim()
-        .split(" ")[2]
-        .replace("\n", "");
+    return parseAvailableFrom(
+        driver.findElement(By.xpath(baseComponent + AVAILABLE_FROM_ELEMENT_LOCATOR)).getText());
   }
 
   public Apartment getApartmentObject() {
@@ -117,4 +126,94 @@ public class ApartmentSearchResultComponent extends PageObject {
         getRentAmount(),
         getAvailableFromDateText());
   }
+
+  /**
+   * Extracts the data of all the apartment search results in a single script execution, instead of
+   * looking up every field of every card separately.
+   *
+   * @param driver The driver to run the script with.
+   * @param itemLocator The XPath locator that matches all the apartment cards.
+   * @return A list of the apartments in the same order they are displayed on the page.
+   */
+  public static List<Apartment> getAllApartmentObjects(WebDriver driver, String itemLocator) {
+    @SuppressWarnings("unchecked")
+    List<List<String>> rows =
+        (List<List<String>>)
+            ((JavascriptExecutor) driver)
+                .executeScript(
+                    TestData.EXTRACT_ELEMENTS_TEXT_SCRIPT, itemLocator, EXTRACTED_LOCATORS);
+
+    return parseApartments(rows);
+  }
+
+  /**
+   * Converts the raw text of the apartment cards to apartment objects using the same parsing rules
+   * as the getters of this class.
+   *
+   * @param rows One row per card, holding the raw text of the fields in the order of {@link
+   *     #FIELD_LOCATORS}, optionally followed by the link to the details of the apartment.
+   * @return A list of the parsed apartments.
+   */
+  public static List<Apartment> parseApartments(List<List<String>> rows) {
+    List<Apartment> apartments = new ArrayList<>(rows.size());
+
+    for (int i = 0; i < rows.size(); i++) {
+      List<String> fields = rows.get(i);
+      int missingField = fields.subList(0, FIELD_LOCATORS.size()).indexOf(null);
+      if (missingField != -1) {
+        throw new RuntimeException(
+            String.format(
+                "Failed to find the element [%s] in the apartment search result #%s.",
+                FIELD_LOCATORS.get(missingField), i + 1));
+      }
+
+      Apartment apartment =
+          new Apartment(
+              parseTitle(fields.get(0)),
+              parseAddress(fields.get(1)),
+              parseRooms(fields.get(2)),
+              parseSize(fields.get(3)),
+              parseFloor(fields.get(4)),
+              parseRent(fields.get(5)),
+              parseAvailableFrom(fields.get(6)));
+      if (fields.size() > FIELD_LOCATORS.size()) {
+        apartment.setId(parseId(fields.get(FIELD_LOCATORS.size())));
+      }
+      apartments.add(apartment);
+    }
+    return apartments;
+  }
+
+  public static String parseTitle(String text) {
+    return text.trim();
+  }
+
+  public static String parseAddress(String text) {
+    return text.trim().replace("\n", " ");
+  }
+
+  public static String parseRooms(String text) {
+    return text.trim().split(" ")[1];
+  }
+
+  public static int parseSize(String text) {
+    return Integer.valueOf(text.trim().split(" ")[0]);
+  }
+
+  public static String parseFloor(String text) {
+    return text.trim();
+  }
+
+  public static int parseRent(String text) {
+    return Integer.valueOf(text.trim().split(" ")[1].replace(".", ""));
+  }
+
+  public static String parseAvailableFrom(String text) {
+    return text.trim().split(" ")[2].replace("\n", "");
+  }
+
+  /** @return The id at the end of the link to the details, or null if there is no link. */
+  public static String parseId(String href) {
+    return href == null ? null : Helper.extractGroupFromRegex(TestData.APARTMENT_ID_REGEX, href);
+  }
 }
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.components;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+
+import com.akelius.automation.core.WaitEngine;
+import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.ApartmentDuplicateIndex;
+import com.akelius.automation.data.TestData;
+
+/**
+ * Harvests the apartment search results in batches while scrolling through the result list, so
+ * lists that only render the cards close to the viewport (virtualised or infinite lists) can be
+ * read completely. Each card is only returned once, and the harvesting stops when the expected
+ * number of apartments was returned or scrolling doesn't render any new card.
+ */
+public class ApartmentSearchResultHarvester implements Iterator<Apartment> {
+
+  protected static final Logger logger =
+      LogManager.getLogger(ApartmentSearchResultHarvester.class);
+
+  private final WebDriver driver;
+  private final String itemLocator;
+  private final int expectedCount;
+  private final String harvestId = UUID.randomUUID().toString();
+  private final Queue<Apartment> batch = new ArrayDeque<>();
+  /** The links of the harvested cards, so equal listings with different links are all kept. */
+  private final Set<String> harvestedKeys = new HashSet<>();
+  private final ApartmentDuplicateIndex duplicateIndex;
+  private boolean done;
+
+  /**
+   * @param driver The driver to harvest the results with.
+   * @param itemLocator The XPath locator that matches the apartment cards.
+   * @param expectedCount The total number of apartments, the harvesting stops once it's reached.
+   */
+  public ApartmentSearchResultHarvester(WebDriver driver, String itemLocator, int expectedCount) {
+    this(driver, itemLocator, expectedCount, null);
+  }
+
+  /**
+   * @param driver The driver to harvest the results with.
+   * @param itemLocator The XPath locator that matches the apartment cards.
+   * @param expectedCount The total number of apartments, the harvesting stops once it's reached.
+   * @param duplicateIndex Gets each apartment as soon as its card is harvested, can be null.
+   */
+  public ApartmentSearchResultHarvester(
+      WebDriver driver,
+      String itemLocator,
+      int expectedCount,
+      ApartmentDuplicateIndex duplicateIndex) {
+    this.driver = driver;
+    this.itemLocator = itemLocator;
+    this.expectedCount = expectedCount;
+    this.duplicateIndex = duplicateIndex;
+  }
+
+  /** @return A lazy, ordered stream of the apartments, harvested as the stream is consumed. */
+  public Stream<Apartment> stream() {
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+        false);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (batch.isEmpty() && !done) {
+      harvestNextBatch();
+    }
+    return !batch.isEmpty();
+  }
+
+  @Override
+  public Apartment next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException("All the apartment search results were harvested.");
+    }
+    return batch.poll();
+  }
+
+  /** @return The number of apartments harvested so far. */
+  public int getHarvestedCount() {
+    return harvestedKeys.size();
+  }
+
+  private void harvestNextBatch() {
+    if (harvestedKeys.size() >= expectedCount) {
+      done = true;
+      return;
+    }
+
+    List<List<String>> rows = readNewCards();
+    if (rows.isEmpty()) {
+      // everything rendered was harvested, scroll to render the next cards
+      ((JavascriptExecutor) driver)
+          .executeScript(TestData.SCROLL_TO_LAST_ELEMENT_SCRIPT, itemLocator);
+      try {
+        rows =
+            new WaitEngine(driver, TestData.HARVEST_SCROLL_TIMEOUT_MILLI)
+                .until(
+                    "new apartment search results to be rendered",
+                    d -> {
+                      List<List<String>> newRows = readNewCards();
+                      return newRows.isEmpty() ? null : newRows;
+                    });
+      } catch (TimeoutException e) {
+        logger.info(
+            String.format(
+                "No more apartment search results after scrolling, harvested %s of %s.",
+                harvestedKeys.size(), expectedCount));
+        done = true;
+        return;
+      }
+    }
+
+    List<List<String>> fields = new ArrayList<>(rows.size());
+    for (List<String> row : rows) {
+      // the first value is the key of the card (its link), the others are the field texts
+      if (harvestedKeys.add(row.get(0))) {
+        fields.add(row.subList(1, row.size()));
+      }
+    }
+    for (Apartment apartment : ApartmentSearchResultComponent.parseApartments(fields)) {
+      if (duplicateIndex != null) {
+        duplicateIndex.add(apartment);
+      }
+      batch.add(apartment);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<List<String>> readNewCards() {
+    return (List<List<String>>)
+        ((JavascriptExecutor) driver)
+            .executeScript(
+                TestData.HARVEST_NEW_ELEMENTS_TEXT_SCRIPT,
+                itemLocator,
+                ApartmentSearchResultComponent.EXTRACTED_LOCATORS,
+                TestData.HARVEST_BATCH_SIZE,
+                harvestId,
+                ApartmentSearchResultComponent.DETAIL_LINK_HREF_LOCATOR);
+  }
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.firefox.FirefoxOptions;
+
+import com.akelius.automation.data.TestData;
+
+/**
+ * Keeps the HTTP cache of the local browsers on disk between their sessions and between runs, so
+ * a new session doesn't download the same bundles of the website again. The browsers do the
+ * caching themselves, HTTPS included, with their own validators and eviction; this class only
+ * points them to a cache directory and reads the hits from their Resource Timing entries.
+ *
+ * <p>A browser can't share its cache directory with another running browser, so every session
+ * leases one of the numbered directories under the configured one and hands it back when it quits.
+ * The next session takes the free directory with the lowest number, which is warm from the previous
+ * sessions. Nothing changes unless it is enabled using the command line configs.
+ */
+public class BrowserCache {
+
+  protected static final Logger logger = LogManager.getLogger(BrowserCache.class);
+
+  private static final Set<Integer> leasedSlots = new TreeSet<>();
+  private static final Map<WebDriver, Integer> slotsByDriver = new ConcurrentHashMap<>();
+  /** The slot leased for the browser the current thread is starting, see {@link #lease()}. */
+  private static final ThreadLocal<Integer> startingSlot = new ThreadLocal<>();
+
+  // metrics
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong revalidations = new AtomicLong();
+  private static final AtomicLong downloads = new AtomicLong();
+  private static final AtomicLong cachedBytes = new AtomicLong();
+
+  /** Private constructor, so no one can instantiate an object of this class. */
+  private BrowserCache() {}
+
+  /** @return True if the browsers should keep their cache on disk. */
+  public static boolean isEnabled() {
+    return !TestData.BROWSER_CACHE_DIRECTORY.isEmpty();
+  }
+
+  /**
+   * Leases a free cache directory for the browser the current thread is about to start. Must be
+   * followed by {@link #attach(WebDriver)} once the browser is started, or by {@link
+   * #cancelLease()} if it fails to start.
+   */
+  public static synchronized void lease() {
+    if (!isEnabled()) {
+      return;
+    }
+
+    int slot = 0;
+    while (leasedSlots.contains(slot)) {
+      slot++;
+    }
+    leasedSlots.add(slot);
+    startingSlot.set(slot);
+  }
+
+  /** @param driver The browser started with the cache directory leased by the current thread. */
+  public static synchronized void attach(WebDriver driver) {
+    Integer slot = startingSlot.get();
+    startingSlot.remove();
+    if (slot != null) {
+      slotsByDriver.put(driver, slot);
+    }
+  }
+
+  /** Frees the cache directory leased by the current thread for a browser that didn't start. */
+  public static synchronized void cancelLease() {
+    Integer slot = startingSlot.get();
+    startingSlot.remove();
+    if (slot != null) {
+      leasedSlots.remove(slot);
+    }
+  }
+
+  /** @param driver A browser that has quit, so its cache directory can be used by another one. */
+  public static synchronized void release(WebDriver driver) {
+    Integer slot = slotsByDriver.remove(driver);
+    if (slot != null) {
+      leasedSlots.remove(slot);
+    }
+  }
+
+  /**
+   * Points a new Chrome browser to the cache directory leased by the current thread.
+   *
+   * @param options The options the browser is created with.
+   * @return The same options, for chaining.
+   */
+  public static ChromeOptions configure(ChromeOptions options) {
+    Path directory = getStartingDirectory();
+    if (directory != null) {
+      options.addArguments(
+          String.format(TestData.CHROME_DISK_CACHE_DIRECTORY_ARGUMENT, directory));
+      if (TestData.BROWSER_CACHE_SIZE_MB > 0) {
+        options.addArguments(
+            String.format(
+                TestData.CHROME_DISK_CACHE_SIZE_ARGUMENT,
+                TestData.BROWSER_CACHE_SIZE_MB * 1024L * 1024L));
+      }
+    }
+    return options;
+  }
+
+  /**
+   * Points a new Firefox browser to the cache directory leased by the current thread.
+   *
+   * @param options The options the browser is created with.
+   * @return The same options, for chaining.
+   */
+  public static FirefoxOptions configure(FirefoxOptions options) {
+    Path directory = getStartingDirectory();
+    if (directory != null) {
+      options.addPreference(TestData.FIREFOX_DISK_CACHE_PREFERENCE, true);
+      options.addPreference(TestData.FIREFOX_DISK_CACHE_DIRECTORY_PREFERENCE, directory.toString());
+      if (TestData.BROWSER_CACHE_SIZE_MB > 0) {
+        options.addPreference(TestData.FIREFOX_DISK_CACHE_SMART_SIZE_PREFERENCE, false);
+        options.addPreference(
+            TestData.FIREFOX_DISK_CACHE_CAPACITY_PREFERENCE, TestData.BROWSER_CACHE_SIZE_MB * 1024);
+      }
+    }
+    return options;
+  }
+
+  /**
+   * Counts the responses of the timing entries that came from the cache. A response read from the
+   * cache has no transfer size, a revalidated one only the size of its headers. Entries without a
+   * body size, e.g. cross-origin ones without Timing-Allow-Origin, say nothing and are skipped.
+   *
+   * @param entries The timing entries returned by {@link NetworkTimingCollector#collect}.
+   */
+  public static void record(List<Map<String, Object>> entries) {
+    for (Map<String, Object> entry : entries) {
+      long transferSize = getLong(entry, "transferSize");
+      long encodedBodySize = getLong(entry, "encodedBodySize");
+      if (getLong(entry, "decodedBodySize") == 0) {
+        continue;
+      }
+
+      if (transferSize == 0) {
+        hits.incrementAndGet();
+        cachedBytes.addAndGet(encodedBodySize);
+      } else if (transferSize < encodedBodySize) {
+        revalidations.incrementAndGet();
+        cachedBytes.addAndGet(encodedBodySize);
+      } else {
+        downloads.incrementAndGet();
+      }
+    }
+  }
+
+  /** @return A summary of the cache use, or null if the cache is not enabled. */
+  public static synchronized String getMetrics() {
+    if (!isEnabled()) {
+      return null;
+    }
+
+    long responses = hits.get() + revalidations.get() + downloads.get();
+    return String.format(
+        "directory = %s, cache hits = %s, revalidated = %s, downloaded = %s, hit rate = %.1f%%, "
+            + "bytes served from the cache = %s, leased cache directories = %s",
+        TestData.BROWSER_CACHE_DIRECTORY,
+        hits.get(),
+        revalidations.get(),
+        downloads.get(),
+        responses == 0 ? 0 : 100.0 * hits.get() / responses,
+        cachedBytes.get(),
+        leasedSlots.size());
+  }
+
+  /** Clears the statistics of the run. */
+  public static void reset() {
+    hits.set(0);
+    revalidations.set(0);
+    downloads.set(0);
+    cachedBytes.set(0);
+  }
+
+  /** @return The cache directory leased by the current thread, created if needed, or null. */
+  private static Path getStartingDirectory() {
+    Integer slot = startingSlot.get();
+    if (slot == null) {
+      return null;
+    }
+
+    // Chrome and Firefox use different cache formats, each gets its own directories
+    Path directory =
+        Paths.get(TestData.BROWSER_CACHE_DIRECTORY)
+            .resolve(String.format("%s-%s", TestData.BROWSER.toLowerCase(Locale.ROOT), slot))
+            .toAbsolutePath();
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to create the browser cache " + directory, e);
+    }
+    return directory;
+  }
+
+  private static long getLong(Map<String, Object> entry, String name) {
+    Object value = entry.get(name);
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+}
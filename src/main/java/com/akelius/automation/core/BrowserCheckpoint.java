@@ -0,0 +1,217 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.core;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import com.akelius.automation.data.TestData;
+
+/**
+ * The state of a browser session at some point of a test: the URL, the cookies with their domains,
+ * the localStorage and the sessionStorage. A checkpoint captured in one session can be restored
+ * into any other fresh or pooled session, so a test can start where another flow left off without
+ * replaying its UI steps.
+ */
+public class BrowserCheckpoint {
+
+  protected static final Logger logger = LogManager.getLogger(BrowserCheckpoint.class);
+
+  private static final Map<String, CompletableFuture<BrowserCheckpoint>> checkpoints =
+      new ConcurrentHashMap<>();
+
+  private final String url;
+  private final Set<Cookie> cookies;
+  private final Map<String, String> localStorage;
+  private final Map<String, String> sessionStorage;
+
+  private BrowserCheckpoint(
+      String url,
+      Set<Cookie> cookies,
+      Map<String, String> localStorage,
+      Map<String, String> sessionStorage) {
+    this.url = url;
+    this.cookies = Collections.unmodifiableSet(cookies);
+    this.localStorage = Collections.unmodifiableMap(localStorage);
+    this.sessionStorage = Collections.unmodifiableMap(sessionStorage);
+  }
+
+  /**
+   * Captures the current state of a browser session.
+   *
+   * @param driver The session to capture.
+   * @return The checkpoint of the session.
+   */
+  @SuppressWarnings("unchecked")
+  public static BrowserCheckpoint capture(WebDriver driver) {
+    JavascriptExecutor javascriptExecutor = (JavascriptExecutor) driver;
+    return new BrowserCheckpoint(
+        driver.getCurrentUrl(),
+        new HashSet<>(driver.manage().getCookies()),
+        (Map<String, String>)
+            javascriptExecutor.executeScript(TestData.READ_STORAGE_SCRIPT, "localStorage"),
+        (Map<String, String>)
+            javascriptExecutor.executeScript(TestData.READ_STORAGE_SCRIPT, "sessionStorage"));
+  }
+
+  /**
+   * Restores the checkpoint with the given name into a session, or brings the session to that
+   * state and saves it as the checkpoint if there is no such checkpoint yet. When several threads
+   * ask for the same missing checkpoint, only one of them runs the setup and the others wait for
+   * it and restore the result. A checkpoint that can't be restored into the session, e.g. because
+   * one of its cookies is rejected, is created again through the UI and replaces the saved one.
+   *
+   * @param name The name of the checkpoint.
+   * @param driver The session to restore the checkpoint into.
+   * @param setUp Brings the session to the state of the checkpoint, using the UI.
+   */
+  public static void restoreOrCreate(String name, WebDriver driver, Runnable setUp) {
+    CompletableFuture<BrowserCheckpoint> newCheckpoint = new CompletableFuture<>();
+    CompletableFuture<BrowserCheckpoint> checkpoint =
+        checkpoints.putIfAbsent(name, newCheckpoint);
+
+    if (checkpoint == null) {
+      logger.info(String.format("Creating the checkpoint '%s'...", name));
+      try {
+        setUp.run();
+        newCheckpoint.complete(capture(driver));
+      } catch (RuntimeException | Error e) {
+        // let the next test try again instead of failing on the same broken checkpoint
+        checkpoints.remove(name, newCheckpoint);
+        newCheckpoint.completeExceptionally(e);
+        throw e;
+      }
+      return;
+    }
+
+    BrowserCheckpoint savedCheckpoint;
+    try {
+      savedCheckpoint = checkpoint.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for the checkpoint " + name);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Failed to create the checkpoint " + name, e.getCause());
+    }
+
+    try {
+      logger.info(String.format("Restoring the checkpoint '%s'...", name));
+      savedCheckpoint.restore(driver);
+    } catch (RuntimeException e) {
+      logger.warn(
+          String.format(
+              "Failed to restore the checkpoint '%s', creating it again. Exception = %s",
+              name, e));
+      setUp.run();
+      checkpoints.put(name, CompletableFuture.completedFuture(capture(driver)));
+    }
+  }
+
+  /** Drops all the checkpoints, e.g. when the website under test changes. */
+  public static void clearAll() {
+    checkpoints.clear();
+  }
+
+  /**
+   * Restores the checkpoint into a session. A browser only accepts the cookies of the domain of the
+   * current page, so each cookie is set from a light page of an origin its domain matches, and the
+   * storage from the one of the origin of the checkpoint, before loading its URL.
+   *
+   * @param driver The session to restore the checkpoint into.
+   * @throws RuntimeException If the browser rejects one of the cookies.
+   */
+  public void restore(WebDriver driver) {
+    Map<String, List<Cookie>> cookiesByOrigin = new LinkedHashMap<>();
+    for (Cookie cookie : cookies) {
+      cookiesByOrigin.computeIfAbsent(getOrigin(cookie), it -> new ArrayList<>()).add(cookie);
+    }
+    // the origin of the checkpoint goes last, so its storage is written once its cookies are set
+    List<Cookie> ownCookies = cookiesByOrigin.remove(getOrigin());
+    cookiesByOrigin.put(getOrigin(), ownCookies == null ? new ArrayList<>() : ownCookies);
+
+    for (Map.Entry<String, List<Cookie>> entry : cookiesByOrigin.entrySet()) {
+      driver.navigate().to(entry.getKey() + TestData.CHECKPOINT_ORIGIN_PATH);
+      driver.manage().deleteAllCookies();
+      for (Cookie cookie : entry.getValue()) {
+        try {
+          driver.manage().addCookie(cookie);
+        } catch (WebDriverException e) {
+          throw new RuntimeException(
+              String.format(
+                  "Failed to restore the cookie '%s' of the domain %s from %s.",
+                  cookie.getName(), cookie.getDomain(), entry.getKey()),
+              e);
+        }
+      }
+    }
+    ((JavascriptExecutor) driver)
+        .executeScript(TestData.WRITE_STORAGE_SCRIPT, localStorage, sessionStorage);
+
+    driver.navigate().to(url);
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public Set<Cookie> getCookies() {
+    return cookies;
+  }
+
+  public Map<String, String> getLocalStorage() {
+    return localStorage;
+  }
+
+  public Map<String, String> getSessionStorage() {
+    return sessionStorage;
+  }
+
+  private String getOrigin() {
+    URI uri = URI.create(url);
+    return uri.getScheme() + "://" + uri.getRawAuthority();
+  }
+
+  /**
+   * @return The origin of the checkpoint if the domain of the cookie matches its host, e.g. the
+   *     domain ".akelius.de" and the host "www.akelius.de", otherwise the one of the domain itself
+   */
+  private String getOrigin(Cookie cookie) {
+    URI uri = URI.create(url);
+    String host = uri.getHost().toLowerCase(Locale.ROOT);
+    String domain =
+        cookie.getDomain() == null
+            ? host
+            : cookie.getDomain().replaceFirst("^\\.", "").toLowerCase(Locale.ROOT);
+    if (domain.isEmpty() || host.equals(domain) || host.endsWith("." + domain)) {
+      return getOrigin();
+    }
+    return uri.getScheme() + "://" + domain;
+  }
+}
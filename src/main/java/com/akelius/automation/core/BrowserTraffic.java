@@ -0,0 +1,198 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.firefox.FirefoxOptions;
+
+import com.akelius.automation.data.TestData;
+import com.akelius.automation.server.LocalProxy;
+
+/**
+ * Controls the network traffic of the local browsers, so they skip the resources none of the
+ * assertions look at. Images are blocked through the preferences of the browser, and the
+ * configured URL patterns (e.g. map tiles or third-party analytics) through a local proxy that all
+ * the browsers of the run share. Fonts are blocked through the preferences of Firefox; Chrome has
+ * no such preference and the proxy only sees the host of HTTPS requests, so Chrome can only skip
+ * the fonts of a plain HTTP website, e.g. the fixture server. Nothing changes unless it is enabled
+ * using the command line configs.
+ */
+public class BrowserTraffic {
+
+  private static final Set<String> SUPPORTED_RESOURCE_TYPES =
+      new LinkedHashSet<>(
+          Arrays.asList(TestData.IMAGES_RESOURCE_TYPE, TestData.FONTS_RESOURCE_TYPE));
+
+  private static final Set<String> blockedResourceTypes =
+      parseList(TestData.BLOCKED_RESOURCE_TYPES)
+          .stream()
+          .map(String::toLowerCase)
+          .collect(Collectors.toCollection(LinkedHashSet::new));
+
+  /** Only started when the proxy is needed, see {@link #isProxyEnabled()}. */
+  private static LocalProxy proxy;
+
+  /** The metrics of the proxy once it is stopped, so they can still be reported. */
+  private static String stoppedProxyMetrics;
+
+  /** Private constructor, so no one can instantiate an object of this class. */
+  private BrowserTraffic() {}
+
+  /** @return The resource types the browsers skip, e.g. {@link TestData#IMAGES_RESOURCE_TYPE}. */
+  public static Set<String> getBlockedResourceTypes() {
+    for (String type : blockedResourceTypes) {
+      if (!SUPPORTED_RESOURCE_TYPES.contains(type)) {
+        throw new RuntimeException(
+            String.format(
+                "The resource type \"%s\" can't be blocked, use one of %s.",
+                type, SUPPORTED_RESOURCE_TYPES));
+      }
+    }
+    return Collections.unmodifiableSet(blockedResourceTypes);
+  }
+
+  /**
+   * @return The URL patterns the local proxy blocks, including the ones of the fonts when the
+   *     website is served over plain HTTP, the only case where the proxy sees their paths
+   */
+  public static List<String> getBlockedUrlPatterns() {
+    List<String> patterns = new ArrayList<>(parseList(TestData.BLOCKED_URL_PATTERNS));
+    if (getBlockedResourceTypes().contains(TestData.FONTS_RESOURCE_TYPE) && !isHttpsWebsite()) {
+      patterns.addAll(Arrays.asList(TestData.FONT_URL_PATTERNS));
+    }
+    return patterns;
+  }
+
+  /** @return True if the browsers should go through the local proxy. */
+  public static boolean isProxyEnabled() {
+    return !getBlockedUrlPatterns().isEmpty();
+  }
+
+  /** @return The local proxy, started on first use. */
+  public static synchronized LocalProxy getProxy() {
+    if (proxy == null) {
+      proxy = new LocalProxy(getBlockedUrlPatterns());
+      proxy.start(TestData.PROXY_PORT);
+    }
+    return proxy;
+  }
+
+  /**
+   * Adds the preferences and the proxy settings that skip the blocked resources to the options of
+   * a new Chrome browser.
+   *
+   * @param options The options the browser is created with.
+   * @return The same options, for chaining.
+   * @throws RuntimeException If the fonts should be blocked on a website served over HTTPS, which
+   *     Chrome can't do.
+   */
+  public static ChromeOptions configure(ChromeOptions options) {
+    if (getBlockedResourceTypes().contains(TestData.FONTS_RESOURCE_TYPE) && isHttpsWebsite()) {
+      throw new RuntimeException(
+          String.format(
+              "Chrome can't block the fonts of %s: it has no preference for them and the local "
+                  + "proxy only sees the host of HTTPS requests. Use Firefox, or block the hosts "
+                  + "that serve the fonts with blockUrls, e.g. \"*fonts.gstatic.com*\".",
+              TestData.LANDING_PAGE));
+    }
+
+    if (getBlockedResourceTypes().contains(TestData.IMAGES_RESOURCE_TYPE)) {
+      options.setExperimentalOption(
+          TestData.CHROME_PREFERENCES_OPTION,
+          Collections.singletonMap(
+              TestData.CHROME_IMAGES_PREFERENCE, TestData.CHROME_BLOCK_IMAGES_VALUE));
+    }
+
+    if (isProxyEnabled()) {
+      options.addArguments(
+          String.format(
+              TestData.CHROME_PROXY_SERVER_ARGUMENT, TestData.LOCALHOST, getProxy().getPort()),
+          TestData.CHROME_PROXY_LOOPBACK_ARGUMENT);
+    }
+    return options;
+  }
+
+  /**
+   * Adds the preferences and the proxy settings that skip the blocked resources to the options of
+   * a new Firefox browser.
+   *
+   * @param options The options the browser is created with.
+   * @return The same options, for chaining.
+   */
+  public static FirefoxOptions configure(FirefoxOptions options) {
+    if (getBlockedResourceTypes().contains(TestData.IMAGES_RESOURCE_TYPE)) {
+      options.addPreference(
+          TestData.FIREFOX_IMAGES_PREFERENCE, TestData.FIREFOX_BLOCK_IMAGES_VALUE);
+    }
+    if (getBlockedResourceTypes().contains(TestData.FONTS_RESOURCE_TYPE)) {
+      // only stops the web fonts from downloading, the text still renders in the local fonts
+      options.addPreference(TestData.FIREFOX_DOWNLOADABLE_FONTS_PREFERENCE, false);
+    }
+
+    if (isProxyEnabled()) {
+      int port = getProxy().getPort();
+      options.addPreference(
+          TestData.FIREFOX_PROXY_TYPE_PREFERENCE, TestData.FIREFOX_MANUAL_PROXY_TYPE);
+      options.addPreference(TestData.FIREFOX_HTTP_PROXY_PREFERENCE, TestData.LOCALHOST);
+      options.addPreference(TestData.FIREFOX_HTTP_PROXY_PORT_PREFERENCE, port);
+      options.addPreference(TestData.FIREFOX_SSL_PROXY_PREFERENCE, TestData.LOCALHOST);
+      options.addPreference(TestData.FIREFOX_SSL_PROXY_PORT_PREFERENCE, port);
+      // Firefox never proxies localhost unless told otherwise, e.g. for the fixture server
+      options.addPreference(TestData.FIREFOX_NO_PROXIES_ON_PREFERENCE, "");
+      options.addPreference(TestData.FIREFOX_PROXY_LOCALHOST_PREFERENCE, true);
+    }
+    return options;
+  }
+
+  /** @return A summary of what the browsers skipped, or null if nothing is blocked. */
+  public static synchronized String getMetrics() {
+    if (getBlockedResourceTypes().isEmpty() && !isProxyEnabled()) {
+      return null;
+    }
+
+    String proxyMetrics = proxy != null ? proxy.getMetrics() : stoppedProxyMetrics;
+    return String.format(
+        "blocked resource types = %s, blocked URL patterns = %s, local proxy: %s",
+        getBlockedResourceTypes(),
+        getBlockedUrlPatterns(),
+        proxyMetrics == null ? "not used" : proxyMetrics);
+  }
+
+  /** Stops the local proxy, if it was started. */
+  public static synchronized void shutdown() {
+    if (proxy != null) {
+      proxy.stop();
+      stoppedProxyMetrics = proxy.getMetrics();
+      proxy = null;
+    }
+  }
+
+  private static boolean isHttpsWebsite() {
+    return TestData.LANDING_PAGE.startsWith("https:");
+  }
+
+  private static List<String> parseList(String value) {
+    return Arrays.stream(value.split(","))
+        .map(String::trim)
+        .filter(it -> !it.isEmpty())
+        .collect(Collectors.toList());
+  }
+}
@@ -12,6 +12,8 @@
  */
 package com.akelius.automation.core;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.openqa.selenium.WebDriver;
@@ -20,42 +22,159 @@ import com.akelius.automation.data.TestData;
 
 /**
  * Responsible for creating driver instances according to the requested configs and allowing other
- * classes to access the created driver
+ * classes to access the created driver. Each thread gets its own driver instance, so tests can run
+ * in parallel without sharing the same browser.
  */
 public class DriverManager {
 
-  private static WebDriver driver;
+  private static final ThreadLocal<WebDriver> driver = new ThreadLocal<>();
+
+  /** All the drivers that are currently alive, regardless of the thread that created them. */
+  private static final Set<WebDriver> activeDrivers = ConcurrentHashMap.newKeySet();
+
+  /** Only created when the pool is enabled using the command line configs. */
+  private static DriverPool pool;
 
   /** Private constructor, so no one can instantiate an object of this class. */
   private DriverManager() {}
 
   /**
-   * Create a driver instance according to the currently requested browser. The way the driver is
-   * created differs according to the execution mode.
+   * Create a driver instance for the current thread according to the currently requested browser.
+   * The way the driver is created differs according to the execution mode.
    *
    * @return A WebDriver instance representing the browser.
    */
   public static WebDriver getDriver() {
-    if (driver == null) {
-      /** Browser selection is done using the command line configs. */
-      if (TestData.BROWSER == null || TestData.BROWSER.isEmpty()) {
-        throw new RuntimeException(
-            "Failed to find a value for the config \"" + TestData.BROWSER_PROPERTY + "\".");
-      }
+    if (driver.get() == null) {
+      WebDriver newDriver = isPoolEnabled() ? getPool().checkout() : createDriver();
+
+      driver.set(newDriver);
+      activeDrivers.add(newDriver);
+    }
+
+    return driver.get();
+  }
 
+  /**
+   * Starts a new browser according to the currently requested browser and execution mode.
+   *
+   * @return A WebDriver instance representing the browser.
+   */
+  private static WebDriver createDriver() {
+    /** Browser selection is done using the command line configs. */
+    if (TestData.BROWSER == null || TestData.BROWSER.isEmpty()) {
+      throw new RuntimeException(
+          "Failed to find a value for the config \"" + TestData.BROWSER_PROPERTY + "\".");
+    }
+
+    WebDriver newDriver;
+    BrowserCache.lease();
+    try {
       if (TestData.BROWSER.equalsIgnoreCase(TestData.FIREFOX_BROWSER)) {
-        driver = TestData.EXECUTION_MODE.getFirefoxDriver();
+        newDriver = TestData.EXECUTION_MODE.getFirefoxDriver();
       } else if (TestData.BROWSER.equalsIgnoreCase(TestData.CHROME_BROWSER)) {
-        driver = TestData.EXECUTION_MODE.getChromeDriver();
+        newDriver = TestData.EXECUTION_MODE.getChromeDriver();
       } else {
         throw new RuntimeException("This browser is not supported yet!");
       }
+    } catch (RuntimeException | Error e) {
+      BrowserCache.cancelLease();
+      throw e;
+    }
+    BrowserCache.attach(newDriver);
+
+    /**
+     * No implicit wait, elements are declared as not found right away. Pages wait explicitly for
+     * what they need using the WaitEngine, so negative checks don't pay for a timeout.
+     */
+    newDriver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
+    newDriver.manage().timeouts().setScriptTimeout(TestData.THIRTY_SECONDS, TimeUnit.SECONDS);
+    TestData.EXECUTION_MODE.setUpBrowserWindow(newDriver);
+
+    return newDriver;
+  }
+
+  /** @return True if browser sessions should be reused across test classes. */
+  public static boolean isPoolEnabled() {
+    return TestData.POOL_SIZE > 0;
+  }
+
+  /** @return The session pool, created on first use. */
+  private static synchronized DriverPool getPool() {
+    if (pool == null) {
+      pool = new DriverPool(TestData.POOL_SIZE, DriverManager::createDriver);
+    }
+    return pool;
+  }
+
+  /** @return A summary of the session pool usage, or null if the pool is not enabled. */
+  public static synchronized String getPoolMetrics() {
+    return pool == null ? null : pool.getMetrics();
+  }
+
+  /**
+   * Attaches a driver that was created outside of this class to the current thread, e.g. a stub
+   * driver used to benchmark the framework without a browser.
+   *
+   * @param newDriver The driver to use for the current thread.
+   */
+  public static void setDriver(WebDriver newDriver) {
+    if (driver.get() != null) {
+      throw new RuntimeException("The current thread already has a driver instance.");
+    }
+
+    driver.set(newDriver);
+    activeDrivers.add(newDriver);
+  }
+
+  /** @return True if the current thread already has a driver instance, false otherwise. */
+  public static boolean hasDriver() {
+    return driver.get() != null;
+  }
+
+  /**
+   * Terminates the driver of the current thread (if any) and detaches it from the thread, so the
+   * next call to {@link #getDriver()} creates a new one. When the pool is enabled, the session is
+   * reset and handed back to the pool instead of being terminated.
+   */
+  public static void quitDriver() {
+    WebDriver currentDriver = driver.get();
+    driver.remove();
+
+    if (currentDriver != null) {
+      activeDrivers.remove(currentDriver);
+      if (isPoolEnabled()) {
+        getPool().release(currentDriver);
+      } else {
+        try {
+          currentDriver.quit();
+        } finally {
+          BrowserCache.release(currentDriver);
+        }
+      }
+    }
+  }
 
-      // Wait 10 seconds before you declare an element as not found
-      driver.manage().timeouts().implicitlyWait(TestData.TEN_SECONDS, TimeUnit.SECONDS);
-      driver.manage().window().maximize();
+  /**
+   * Terminates all the drivers that are still alive. Useful when running in parallel, where worker
+   * threads might have created drivers that were never handed back.
+   */
+  public static void quitAllDrivers() {
+    synchronized (DriverManager.class) {
+      if (pool != null) {
+        pool.shutdown();
+      }
     }
 
-    return driver;
+    for (WebDriver activeDriver : activeDrivers) {
+      activeDrivers.remove(activeDriver);
+      try {
+        activeDriver.quit();
+      } catch (Exception e) {
+        // the session might already be gone, nothing left to clean
+      }
+      BrowserCache.release(activeDriver);
+    }
+    driver.remove();
   }
 }
@@ -0,0 +1,288 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import com.akelius.automation.data.TestData;
+import com.akelius.automation.util.Helper;
+
+/**
+ * A bounded pool of live browser sessions. Tests check a session out instead of starting a new
+ * browser, and the session is reset (cookies, storage and extra windows cleared) when it is handed
+ * back, so the next test class gets a warm but clean browser.
+ *
+ * <p>Cookies and storage belong to an origin, and WebDriver can only clear them for the origin
+ * the browser is on. The reset clears the origin of the website under test and of every open
+ * window. Any other origin a test visited in between, or the third-party cookies of embedded
+ * content, can't be listed or cleared, so a session that is on an origin other than the website's
+ * when it is handed back is killed instead of reused.
+ */
+public class DriverPool {
+
+  protected static final Logger logger = LogManager.getLogger(DriverPool.class);
+  private static final String BLANK_PAGE = "about:blank";
+  private static final String CLEAR_STORAGE_SCRIPT =
+      "try { window.localStorage.clear(); } catch (e) {}"
+          + "try { window.sessionStorage.clear(); } catch (e) {}";
+
+  private final int maxSize;
+  private final Supplier<WebDriver> driverFactory;
+  private final LinkedBlockingDeque<WebDriver> idleDrivers = new LinkedBlockingDeque<>();
+  private final AtomicInteger createdDrivers = new AtomicInteger();
+  /** The window each session was created with, the one that is kept when it is reset. */
+  private final Map<WebDriver, String> mainWindows = new ConcurrentHashMap<>();
+  private volatile boolean closed;
+
+  // metrics
+  private final AtomicLong checkouts = new AtomicLong();
+  private final AtomicLong reuses = new AtomicLong();
+  private final AtomicLong newSessions = new AtomicLong();
+  private final AtomicLong failedResets = new AtomicLong();
+  private final AtomicLong recycledSessions = new AtomicLong();
+  private final AtomicLong totalWaitMillis = new AtomicLong();
+  private final AtomicLong maxWaitMillis = new AtomicLong();
+
+  /**
+   * @param maxSize The maximum number of browser sessions alive at the same time.
+   * @param driverFactory Creates a new browser session when the pool has no idle one.
+   */
+  public DriverPool(int maxSize, Supplier<WebDriver> driverFactory) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("The pool size must be at least 1.");
+    }
+    this.maxSize = maxSize;
+    this.driverFactory = driverFactory;
+  }
+
+  /**
+   * Checks a session out of the pool. An idle session is reused if there is one, a new one is
+   * created if the pool is not full yet, otherwise the call blocks until a session is released.
+   *
+   * @return A WebDriver instance owned by the caller until it is released.
+   */
+  public WebDriver checkout() {
+    long start = System.currentTimeMillis();
+    WebDriver pooledDriver = idleDrivers.pollFirst();
+
+    try {
+      if (pooledDriver != null) {
+        reuses.incrementAndGet();
+        return pooledDriver;
+      }
+
+      if (reserveSlot()) {
+        try {
+          WebDriver newDriver = driverFactory.get();
+          mainWindows.put(newDriver, newDriver.getWindowHandle());
+          newSessions.incrementAndGet();
+          return newDriver;
+        } catch (RuntimeException e) {
+          createdDrivers.decrementAndGet();
+          throw e;
+        }
+      }
+
+      pooledDriver =
+          idleDrivers.pollFirst(TestData.POOL_CHECKOUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      if (pooledDriver == null) {
+        throw new RuntimeException(
+            "Timed out waiting for a free browser session. Pool size = " + maxSize);
+      }
+      reuses.incrementAndGet();
+      return pooledDriver;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for a free browser session.");
+    } finally {
+      recordWait(System.currentTimeMillis() - start);
+    }
+  }
+
+  /**
+   * Hands a session back to the pool. The session is reset first, and if that fails the browser is
+   * killed so a broken session never gets reused.
+   *
+   * @param driver The driver that was checked out before.
+   */
+  public void release(WebDriver driver) {
+    if (driver == null) {
+      return;
+    }
+
+    if (closed || !reset(driver)) {
+      discard(driver);
+      return;
+    }
+
+    idleDrivers.offerFirst(driver);
+  }
+
+  /**
+   * Kills the browser of a session that should not be reused and frees its slot in the pool.
+   *
+   * @param driver The driver to terminate.
+   */
+  public void discard(WebDriver driver) {
+    createdDrivers.decrementAndGet();
+    mainWindows.remove(driver);
+    try {
+      driver.quit();
+    } catch (Exception e) {
+      logger.info("Failed to quit the browser session. Exception = " + e);
+    }
+    BrowserCache.release(driver);
+  }
+
+  /** Kills all the idle sessions and refuses to take back any session released after this call. */
+  public void shutdown() {
+    closed = true;
+    List<WebDriver> drivers = new ArrayList<>();
+    idleDrivers.drainTo(drivers);
+    drivers.forEach(this::discard);
+  }
+
+  /** @return A summary of how the pool has been used so far. */
+  public String getMetrics() {
+    long checkoutCount = checkouts.get();
+    return String.format(
+        "checkouts = %s, reused sessions = %s, created sessions = %s, failed resets = %s, "
+            + "recycled sessions = %s, average checkout wait = %s ms, max checkout wait = %s ms",
+        checkoutCount,
+        reuses.get(),
+        newSessions.get(),
+        failedResets.get(),
+        recycledSessions.get(),
+        checkoutCount == 0 ? 0 : totalWaitMillis.get() / checkoutCount,
+        maxWaitMillis.get());
+  }
+
+  public long getCheckoutCount() {
+    return checkouts.get();
+  }
+
+  public long getReuseCount() {
+    return reuses.get();
+  }
+
+  public long getFailedResetCount() {
+    return failedResets.get();
+  }
+
+  /** @return The number of sessions killed because they were on an origin the reset can't clear. */
+  public long getRecycledSessionCount() {
+    return recycledSessions.get();
+  }
+
+  public long getTotalCheckoutWaitMillis() {
+    return totalWaitMillis.get();
+  }
+
+  public long getMaxCheckoutWaitMillis() {
+    return maxWaitMillis.get();
+  }
+
+  /** @return True if a new session can be created without going over the pool size. */
+  private boolean reserveSlot() {
+    while (true) {
+      int current = createdDrivers.get();
+      if (current >= maxSize) {
+        return false;
+      }
+      if (createdDrivers.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private void recordWait(long waitMillis) {
+    checkouts.incrementAndGet();
+    totalWaitMillis.addAndGet(waitMillis);
+    maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+  }
+
+  /**
+   * Brings the browser back to a clean state: only the window it was created with, no cookies,
+   * empty storage and an empty page.
+   *
+   * @param driver The driver to reset.
+   * @return True if the reset succeeded, false if the session has to be killed.
+   */
+  private boolean reset(WebDriver driver) {
+    try {
+      String mainWindow = mainWindows.get(driver);
+      Set<String> windows = driver.getWindowHandles();
+      if (mainWindow == null || !windows.contains(mainWindow)) {
+        recycledSessions.incrementAndGet();
+        logger.info("The main window of the browser session was closed, it will be discarded.");
+        return false;
+      }
+
+      String websiteOrigin = Helper.getOrigin(TestData.LANDING_PAGE);
+      boolean websiteCleared = false;
+      for (String window : windows) {
+        driver.switchTo().window(window);
+        String origin = Helper.getOrigin(driver.getCurrentUrl());
+        if (origin != null && !origin.equals(websiteOrigin)) {
+          recycledSessions.incrementAndGet();
+          logger.info(
+              String.format(
+                  "The browser session is on the origin %s, which can't be reset, it will be "
+                      + "discarded.",
+                  origin));
+          return false;
+        }
+        if (origin != null) {
+          clearCurrentOrigin(driver);
+          websiteCleared = true;
+        }
+        if (!window.equals(mainWindow)) {
+          driver.close();
+        }
+      }
+      driver.switchTo().window(mainWindow);
+
+      if (!websiteCleared) {
+        // the test left the website, its cookies and storage are only reachable from its origin
+        driver.navigate().to(websiteOrigin + TestData.CHECKPOINT_ORIGIN_PATH);
+        clearCurrentOrigin(driver);
+      }
+      driver.navigate().to(BLANK_PAGE);
+      return true;
+    } catch (Exception e) {
+      failedResets.incrementAndGet();
+      logger.info("Failed to reset the browser session, it will be discarded. Exception = " + e);
+      return false;
+    }
+  }
+
+  /** Clears the cookies and the storage of the origin the current window is on. */
+  private static void clearCurrentOrigin(WebDriver driver) {
+    ((JavascriptExecutor) driver).executeScript(CLEAR_STORAGE_SCRIPT);
+    driver.manage().deleteAllCookies();
+  }
+}
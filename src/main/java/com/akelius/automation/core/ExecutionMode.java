@@ -17,7 +17,9 @@ import java.util.logging.Logger;
 
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.firefox.FirefoxOptions;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
 
@@ -34,13 +36,74 @@ public enum ExecutionMode implements IExecutionMode {
           FirefoxDriver.SystemProperty.BROWSER_LOGFILE, TestData.BROWSER_LOG_FILE_PATH);
 
       LOGGER.info("Initializing Firefox browser...");
-      return new FirefoxDriver();
+      return new FirefoxDriver(
+          BrowserCache.configure(BrowserTraffic.configure(new FirefoxOptions())));
     }
 
     @Override
     public WebDriver getChromeDriver() {
       LOGGER.info("Initializing Chrome browser...");
-      return new ChromeDriver();
+      return new ChromeDriver(
+          BrowserCache.configure(BrowserTraffic.configure(new ChromeOptions())));
+    }
+
+    @Override
+    public void setUpBrowserWindow(WebDriver driver) {
+      driver.manage().window().maximize();
+    }
+  },
+
+  /**
+   * Runs the browsers locally without a display. The window size is fixed instead of maximized, so
+   * the layout matches the resolution used on BrowserStack.
+   */
+  HEADLESS() {
+
+    @Override
+    public WebDriver getFirefoxDriver() {
+      // To stop seeing the GeckoDriver annoying logs
+      System.setProperty(
+          FirefoxDriver.SystemProperty.BROWSER_LOGFILE, TestData.BROWSER_LOG_FILE_PATH);
+
+      FirefoxOptions options = new FirefoxOptions();
+      options.setHeadless(true);
+      options.addArguments(
+          String.format(
+              TestData.FIREFOX_WIDTH_ARGUMENT, TestData.RESOLUTION_DIMENSION_VALUE.getWidth()),
+          String.format(
+              TestData.FIREFOX_HEIGHT_ARGUMENT, TestData.RESOLUTION_DIMENSION_VALUE.getHeight()));
+      options.addPreference(TestData.FIREFOX_DISABLE_HARDWARE_ACCELERATION_PREFERENCE, true);
+      options.addPreference(TestData.FIREFOX_EXTENSIONS_SCOPES_PREFERENCE, 0);
+      BrowserTraffic.configure(options);
+      BrowserCache.configure(options);
+
+      LOGGER.info("Initializing headless Firefox browser...");
+      return new FirefoxDriver(options);
+    }
+
+    @Override
+    public WebDriver getChromeDriver() {
+      ChromeOptions options = new ChromeOptions();
+      options.setHeadless(true);
+      options.addArguments(
+          String.format(
+              TestData.CHROME_WINDOW_SIZE_ARGUMENT,
+              TestData.RESOLUTION_DIMENSION_VALUE.getWidth(),
+              TestData.RESOLUTION_DIMENSION_VALUE.getHeight()),
+          TestData.CHROME_DISABLE_GPU_ARGUMENT,
+          TestData.CHROME_DISABLE_EXTENSIONS_ARGUMENT,
+          TestData.CHROME_DISABLE_DEV_SHM_USAGE_ARGUMENT);
+      BrowserTraffic.configure(options);
+      BrowserCache.configure(options);
+
+      LOGGER.info("Initializing headless Chrome browser...");
+      return new ChromeDriver(options);
+    }
+
+    @Override
+    public void setUpBrowserWindow(WebDriver driver) {
+      // maximize() has no screen to fill in headless mode
+      driver.manage().window().setSize(TestData.RESOLUTION_DIMENSION_VALUE);
     }
   },
 
@@ -95,6 +158,11 @@ public enum ExecutionMode implements IExecutionMode {
       return createBrowserStackRemoteDriver(capabilities);
     }
 
+    @Override
+    public void setUpBrowserWindow(WebDriver driver) {
+      driver.manage().window().maximize();
+    }
+
     /**
      * Create a remote WebDriver instance on BrowserStack.
      *
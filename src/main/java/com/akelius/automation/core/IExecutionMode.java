@@ -20,4 +20,6 @@ public interface IExecutionMode {
   public WebDriver getFirefoxDriver();
 
   public WebDriver getChromeDriver();
+
+  public void setUpBrowserWindow(WebDriver driver);
 }
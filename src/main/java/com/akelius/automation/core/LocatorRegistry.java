@@ -0,0 +1,130 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.core;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.support.FindBy;
+
+/**
+ * Keeps the XPath locators of the page object member variables, so the class hierarchy is only
+ * scanned with reflection once per class instead of on every lookup.
+ */
+public class LocatorRegistry {
+
+  /** Matches the format specifiers in a locator, e.g. %s or %1$s, but not the escaped %%. */
+  private static final Pattern FORMAT_SPECIFIER =
+      Pattern.compile("%(\\d+\\$)?[-#+ 0,(<]*\\d*(\\.\\d+)?[a-zA-Z%]");
+
+  private static final Map<Class<?>, Map<String, Locator>> locators = new ConcurrentHashMap<>();
+
+  /** Private constructor, so no one can instantiate an object of this class. */
+  private LocatorRegistry() {}
+
+  /**
+   * Gets the locator of a member variable annotated with an XPath {@link FindBy}.
+   *
+   * @param clazz The class that declares the member variable (or one of its sub classes).
+   * @param memberVariableName The member variable name in String format
+   * @return The parsed locator of the member variable.
+   */
+  public static Locator getLocator(Class<?> clazz, String memberVariableName) {
+    Locator locator =
+        locators.computeIfAbsent(clazz, LocatorRegistry::scan).get(memberVariableName);
+
+    if (locator == null) {
+      throw new RuntimeException(
+          String.format(
+              "Failed to find an XPath locator for the member variable [%s] in the class [%s].",
+              memberVariableName, clazz.getName()));
+    }
+    return locator;
+  }
+
+  /**
+   * Collects the XPath locators of a class and all its super classes. Member variables declared in
+   * a sub class hide the ones with the same name in the super classes.
+   */
+  private static Map<String, Locator> scan(Class<?> clazz) {
+    Map<String, Locator> classLocators = new HashMap<>();
+
+    for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        FindBy findBy = field.getDeclaredAnnotation(FindBy.class);
+        if (findBy != null && !findBy.xpath().isEmpty()) {
+          classLocators.putIfAbsent(field.getName(), new Locator(findBy.xpath()));
+        }
+      }
+    }
+
+    return Collections.unmodifiableMap(classLocators);
+  }
+
+  /** An XPath locator that was parsed once and may contain one or more variables. */
+  public static class Locator {
+
+    private final String xpath;
+    private final int variableCount;
+    private final By staticBy;
+
+    private Locator(String xpath) {
+      this.xpath = xpath;
+
+      int count = 0;
+      boolean hasIndexedVariables = false;
+      Matcher matcher = FORMAT_SPECIFIER.matcher(xpath);
+      while (matcher.find()) {
+        if (!matcher.group().equals("%%")) {
+          count++;
+          hasIndexedVariables |= matcher.group(1) != null;
+        }
+      }
+      // indexed variables can be reused, so the number of expected values is not known
+      this.variableCount = hasIndexedVariables ? -1 : count;
+
+      // locators without variables never change, so the same By can be shared
+      this.staticBy = count == 0 ? By.xpath(xpath) : null;
+    }
+
+    /**
+     * Replaces the variables in the locator with the given values.
+     *
+     * @param variables The variable values to replace in the original locator
+     * @return A By instance for the resolved locator.
+     */
+    public By resolve(Object... variables) {
+      if (staticBy != null) {
+        return staticBy;
+      }
+
+      if (variableCount != -1 && variables.length != variableCount) {
+        throw new RuntimeException(
+            String.format(
+                "The locator [%s] expects %s variable(s) but got %s.",
+                xpath, variableCount, variables.length));
+      }
+      return By.xpath(String.format(xpath, variables));
+    }
+
+    public String getXPath() {
+      return xpath;
+    }
+  }
+}
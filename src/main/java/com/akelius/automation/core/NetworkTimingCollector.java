@@ -0,0 +1,191 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import com.akelius.automation.data.TestData;
+
+/**
+ * Reads the Navigation and Resource Timing entries of the browser after each page object
+ * transition, and aggregates the request latencies by URL pattern across the whole run.
+ */
+public class NetworkTimingCollector {
+
+  protected static final Logger logger = LogManager.getLogger(NetworkTimingCollector.class);
+
+  /** Path segments that look like ids (numbers, hashes, UUIDs) are replaced to group the URLs. */
+  private static final Pattern ID_PATH_SEGMENT =
+      Pattern.compile("/(\\d+|[0-9a-fA-F-]{8,}|(?=[^/]*\\d)[0-9a-zA-Z_-]{6,})(?=/|$)");
+
+  private static final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+
+  /** Private constructor, so no one can instantiate an object of this class. */
+  private NetworkTimingCollector() {}
+
+  /** @return True if the timings should be collected, according to the command line configs. */
+  public static boolean isEnabled() {
+    return TestData.COLLECT_NETWORK_TIMINGS;
+  }
+
+  /**
+   * Reads the timing entries that were recorded since the last call for the current document and
+   * adds them to the run statistics.
+   *
+   * @param driver The driver to read the entries from.
+   * @return The new entries, one map per entry with the fields of {@link
+   *     TestData#COLLECT_TIMING_ENTRIES_SCRIPT}.
+   */
+  public static List<Map<String, Object>> collect(WebDriver driver) {
+    List<Map<String, Object>> entries;
+    try {
+      @SuppressWarnings("unchecked")
+      List<Map<String, Object>> result =
+          (List<Map<String, Object>>)
+              ((JavascriptExecutor) driver).executeScript(TestData.COLLECT_TIMING_ENTRIES_SCRIPT);
+      entries = result;
+    } catch (WebDriverException e) {
+      logger.info("Failed to read the timing entries of the page. Exception = " + e);
+      return Collections.emptyList();
+    }
+
+    for (Map<String, Object> entry : entries) {
+      String pattern = getUrlPattern((String) entry.get("name"));
+      if (TestData.NAVIGATION_ENTRY_TYPE.equals(entry.get("entryType"))) {
+        pattern = "[navigation] " + pattern;
+      }
+      long latency = Math.round(((Number) entry.get("duration")).doubleValue());
+      latencies.computeIfAbsent(pattern, it -> Collections.synchronizedList(new ArrayList<>()));
+      latencies.get(pattern).add(latency);
+    }
+    return entries;
+  }
+
+  /**
+   * Groups URLs that only differ in their ids or query, e.g. /api/units/123?page=2 becomes
+   * /api/units/{id}.
+   *
+   * @param url The full URL of the request.
+   * @return The URL pattern.
+   */
+  public static String getUrlPattern(String url) {
+    String pattern = url;
+    int queryStart = pattern.indexOf('?');
+    if (queryStart != -1) {
+      pattern = pattern.substring(0, queryStart);
+    }
+    int fragmentStart = pattern.indexOf('#');
+    if (fragmentStart != -1) {
+      pattern = pattern.substring(0, fragmentStart);
+    }
+
+    // keep the host as is, only the path can contain ids
+    int pathStart = pattern.indexOf('/', pattern.indexOf("//") + 2);
+    if (pattern.contains("//") && pathStart != -1) {
+      pattern =
+          pattern.substring(0, pathStart)
+              + ID_PATH_SEGMENT.matcher(pattern.substring(pathStart)).replaceAll("/{id}");
+    }
+    return pattern;
+  }
+
+  /** @return The latency percentiles of every URL pattern, slowest p95 first. */
+  public static List<LatencySummary> getSummary() {
+    List<LatencySummary> summary = new ArrayList<>();
+
+    for (Map.Entry<String, List<Long>> entry : latencies.entrySet()) {
+      List<Long> samples;
+      synchronized (entry.getValue()) {
+        samples = new ArrayList<>(entry.getValue());
+      }
+      Collections.sort(samples);
+      summary.add(
+          new LatencySummary(
+              entry.getKey(),
+              samples.size(),
+              percentile(samples, 50),
+              percentile(samples, 95),
+              percentile(samples, 99)));
+    }
+
+    summary.sort((first, second) -> Long.compare(second.getP95(), first.getP95()));
+    return summary;
+  }
+
+  /** Clears the statistics of the run. */
+  public static void reset() {
+    latencies.clear();
+  }
+
+  /** Nearest-rank percentile of a sorted list. */
+  private static long percentile(List<Long> sortedSamples, int percentile) {
+    int rank = (int) Math.ceil(percentile / 100.0 * sortedSamples.size());
+    return sortedSamples.get(Math.max(rank - 1, 0));
+  }
+
+  /** The latency percentiles of one URL pattern in milliseconds. */
+  public static class LatencySummary {
+
+    private final String urlPattern;
+    private final int count;
+    private final long p50;
+    private final long p95;
+    private final long p99;
+
+    public LatencySummary(String urlPattern, int count, long p50, long p95, long p99) {
+      this.urlPattern = urlPattern;
+      this.count = count;
+      this.p50 = p50;
+      this.p95 = p95;
+      this.p99 = p99;
+    }
+
+    public String getUrlPattern() {
+      return urlPattern;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public long getP50() {
+      return p50;
+    }
+
+    public long getP95() {
+      return p95;
+    }
+
+    public long getP99() {
+      return p99;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s [count = %s, p50 = %s ms, p95 = %s ms, p99 = %s ms]",
+          urlPattern, count, p50, p95, p99);
+    }
+  }
+}
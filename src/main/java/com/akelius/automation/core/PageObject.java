@@ -12,17 +12,14 @@
  */
 package com.akelius.automation.core;
 
-import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.support.FindBy;
 import org.openqa.selenium.support.PageFactory;
-import org.openqa.selenium.support.ui.ExpectedCondition;
-import org.openqa.selenium.support.ui.WebDriverWait;
 
 import com.akelius.automation.data.TestData;
 import com.akelius.automation.util.Helper;
@@ -30,16 +27,27 @@ import com.akelius.automation.util.Helper;
 /** Base page object to offer common functionality for page object creation. */
 public class PageObject {
 
-  protected static WebDriver driver;
-  protected static WebDriverWait wait;
+  protected final WebDriver driver;
+  protected final WaitEngine wait;
   protected static final Logger logger = LogManager.getLogger(PageObject.class);
 
   public PageObject() {
     driver = DriverManager.getDriver();
-    wait = new WebDriverWait(driver, TestData.TEN_SECONDS, TestData.HALF_SECOND_IN_MILLI);
+    wait = new WaitEngine(driver, TestData.TEN_SECONDS_IN_MILLI);
 
-    // wait for the page to finish loading
-    Helper.waitForPageLoadingToComplete();
+    // wait for the page to finish loading and the Angular application to settle
+    Helper.waitForAngularToBeStable();
+
+    boolean hasBudget = PerformanceBudgets.hasBudget(getClass());
+    if (NetworkTimingCollector.isEnabled() || hasBudget || BrowserCache.isEnabled()) {
+      List<Map<String, Object>> entries = NetworkTimingCollector.collect(driver);
+      if (hasBudget) {
+        PerformanceBudgets.check(getClass(), entries);
+      }
+      if (BrowserCache.isEnabled()) {
+        BrowserCache.record(entries);
+      }
+    }
 
     PageFactory.initElements(driver, this);
   }
@@ -54,8 +62,8 @@ public class PageObject {
    * @return
    */
   public WebElement findElement(Class clazz, String memberVariableName, Object... variables) {
-    String locator = String.format(getXPathAnnotationValue(clazz, memberVariableName), variables);
-    return driver.findElement(By.xpath(locator));
+    return driver.findElement(
+        LocatorRegistry.getLocator(clazz, memberVariableName).resolve(variables));
   }
 
   /**
@@ -63,55 +71,13 @@ public class PageObject {
    *
    * @param clazz The parent class for this member variable.
    * @param memberVariableName The member variable name in String format
+   * @param variables The variable values to replace in the original locator
    * @return
    */
-  public int getElementCount(Class clazz, String memberVariableName) {
-    return driver.findElements(By.xpath(getXPathAnnotationValue(clazz, memberVariableName))).size();
-  }
-
-  /**
-   * Gets an annotation value using Java Reflection API. Can be used with locators that contain
-   * variables in them since the Selenium's Page object design doesn't support this.
-   *
-   * @param clazz The parent class for this member variable.
-   * @param memberVariableName The member variable name in String format
-   * @return
-   */
-  private String getXPathAnnotationValue(Class clazz, String memberVariableName) {
-    String value = null;
-    try {
-      value = getFieldValue(clazz, memberVariableName).getDeclaredAnnotation(FindBy.class).xpath();
-    } catch (Exception ex) {
-      logger.info("Failed to get the annotation value. Exception = " + ex);
-    }
-    return value;
-  }
-
-  /**
-   * Gets a Field value from a class or one of its super classes
-   *
-   * @param clazz The parent class for this member variable.
-   * @param memberVariableName The member variable name in String format
-   * @return
-   */
-  private Field getFieldValue(Class clazz, String memberVariableName) {
-    Field field = null;
-    try {
-      field = clazz.getDeclaredField(memberVariableName);
-    } catch (NoSuchFieldException e) {
-      if (clazz.getSuperclass() != null) {
-        clazz = clazz.getSuperclass();
-        // recursive call until you find the field value in a parent
-        field = getFieldValue(clazz, memberVariableName);
-      }
-    }
-
-    // check for null value
-    if (field == null) {
-      throw new RuntimeException("Failed to find the member variable in the class.");
-    }
-
-    return field;
+  public int getElementCount(Class clazz, String memberVariableName, Object... variables) {
+    return driver
+        .findElements(LocatorRegistry.getLocator(clazz, memberVariableName).resolve(variables))
+        .size();
   }
 
   /**
@@ -120,13 +86,7 @@ public class PageObject {
    *
    * @param element The element to check its text.
    */
-  public static void waitUntilTextIsNotEmpty(WebElement element) {
-    wait.until(
-        new ExpectedCondition<Boolean>() {
-          @Override
-          public Boolean apply(WebDriver d) {
-            return element.getText().length() != 0;
-          }
-        });
+  public void waitUntilTextIsNotEmpty(WebElement element) {
+    wait.until("text to be present in " + element, d -> element.getText().length() != 0);
   }
 }
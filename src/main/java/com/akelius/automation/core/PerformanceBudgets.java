@@ -0,0 +1,199 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.core;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.akelius.automation.data.TestData;
+
+/**
+ * Performance budgets per page object class, loaded from a properties file where each line looks
+ * like {@code LandingPage.ttfb=1500}. The navigation metrics captured when a page object is
+ * created are compared with the budgets of its class, and a budget that is exceeded either fails
+ * the page object creation or is flagged on the running test, according to the command line
+ * configs.
+ */
+public class PerformanceBudgets {
+
+  protected static final Logger logger = LogManager.getLogger(PerformanceBudgets.class);
+
+  private static final Map<String, Map<Metric, Long>> budgets = loadBudgets();
+
+  /** The budget violations of the test running on each thread, until they are reported. */
+  private static final ThreadLocal<List<String>> violations =
+      ThreadLocal.withInitial(ArrayList::new);
+
+  /** Private constructor, so no one can instantiate an object of this class. */
+  private PerformanceBudgets() {}
+
+  /** The metrics that can have a budget. Times are in milliseconds and sizes in bytes. */
+  public enum Metric {
+    TTFB("ttfb"),
+    DOM_CONTENT_LOADED("domContentLoaded"),
+    LOAD("load"),
+    TRANSFER_SIZE("transferSize"),
+    REQUEST_COUNT("requestCount");
+
+    private final String key;
+
+    private Metric(String key) {
+      this.key = key;
+    }
+
+    public String getKey() {
+      return key;
+    }
+  }
+
+  /**
+   * @param clazz The page object class.
+   * @return True if the page object class has at least one budget and the budgets are not
+   *     switched off.
+   */
+  public static boolean hasBudget(Class<?> clazz) {
+    return !TestData.BUDGET_MODE_OFF.equalsIgnoreCase(TestData.PERFORMANCE_BUDGET_MODE)
+        && budgets.containsKey(clazz.getSimpleName());
+  }
+
+  /**
+   * Compares the timing entries captured for a page object with the budgets of its class. The
+   * navigation metrics (TTFB, DOMContentLoaded and load) are only checked when the entries contain
+   * a navigation, e.g. a component opened on an already loaded page only checks the size and the
+   * number of the requests it triggered.
+   *
+   * @param clazz The page object class.
+   * @param entries The timing entries returned by {@link NetworkTimingCollector#collect}.
+   */
+  public static void check(Class<?> clazz, List<Map<String, Object>> entries) {
+    Map<Metric, Long> classBudgets = budgets.get(clazz.getSimpleName());
+    if (classBudgets == null) {
+      return;
+    }
+
+    Map<Metric, Long> actuals = measure(entries);
+    List<String> exceeded = new ArrayList<>();
+    for (Map.Entry<Metric, Long> budget : classBudgets.entrySet()) {
+      Long actual = actuals.get(budget.getKey());
+      if (actual != null && actual > budget.getValue()) {
+        exceeded.add(
+            String.format(
+                "%s.%s = %s exceeds the budget of %s",
+                clazz.getSimpleName(), budget.getKey().getKey(), actual, budget.getValue()));
+      }
+    }
+
+    if (exceeded.isEmpty()) {
+      return;
+    }
+
+    if (TestData.BUDGET_MODE_FAIL.equalsIgnoreCase(TestData.PERFORMANCE_BUDGET_MODE)) {
+      throw new RuntimeException("Performance budget exceeded: " + String.join("; ", exceeded));
+    }
+
+    exceeded.forEach(it -> logger.warn("Performance budget exceeded: " + it));
+    violations.get().addAll(exceeded);
+  }
+
+  /**
+   * Returns the budget violations flagged on the current thread since the last call, so they can
+   * be attached to the test that caused them.
+   *
+   * @return A list of violation messages, empty if there are none.
+   */
+  public static List<String> drainViolations() {
+    List<String> threadViolations = violations.get();
+    violations.remove();
+    return threadViolations;
+  }
+
+  private static Map<Metric, Long> measure(List<Map<String, Object>> entries) {
+    Map<Metric, Long> actuals = new EnumMap<>(Metric.class);
+    long transferSize = 0;
+
+    for (Map<String, Object> entry : entries) {
+      transferSize += getLong(entry, "transferSize");
+      if (TestData.NAVIGATION_ENTRY_TYPE.equals(entry.get("entryType"))) {
+        actuals.put(Metric.TTFB, getLong(entry, "responseStart"));
+        actuals.put(Metric.DOM_CONTENT_LOADED, getLong(entry, "domContentLoadedEventEnd"));
+        actuals.put(Metric.LOAD, getLong(entry, "loadEventEnd"));
+      }
+    }
+
+    actuals.put(Metric.TRANSFER_SIZE, transferSize);
+    actuals.put(Metric.REQUEST_COUNT, (long) entries.size());
+    return actuals;
+  }
+
+  private static long getLong(Map<String, Object> entry, String key) {
+    Object value = entry.get(key);
+    return value == null ? 0 : Math.round(((Number) value).doubleValue());
+  }
+
+  private static Map<String, Map<Metric, Long>> loadBudgets() {
+    Properties properties = new Properties();
+
+    try (InputStream input = openBudgetsFile()) {
+      if (input == null) {
+        return Collections.emptyMap();
+      }
+      properties.load(input);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read the performance budgets. Exception = " + e);
+    }
+
+    Map<String, Map<Metric, Long>> loadedBudgets = new ConcurrentHashMap<>();
+    for (String name : properties.stringPropertyNames()) {
+      int separator = name.lastIndexOf('.');
+      Metric metric = separator == -1 ? null : getMetric(name.substring(separator + 1));
+      if (metric == null) {
+        throw new RuntimeException("Unknown performance budget [" + name + "].");
+      }
+
+      loadedBudgets
+          .computeIfAbsent(name.substring(0, separator), it -> new EnumMap<>(Metric.class))
+          .put(metric, Long.valueOf(properties.getProperty(name).trim()));
+    }
+    return loadedBudgets;
+  }
+
+  /** The budgets file given on the command line, or the one shipped with the framework. */
+  private static InputStream openBudgetsFile() throws IOException {
+    if (TestData.PERFORMANCE_BUDGETS_FILE != null) {
+      return new FileInputStream(TestData.PERFORMANCE_BUDGETS_FILE);
+    }
+    return PerformanceBudgets.class
+        .getClassLoader()
+        .getResourceAsStream(TestData.PERFORMANCE_BUDGETS_RESOURCE);
+  }
+
+  private static Metric getMetric(String key) {
+    for (Metric metric : Metric.values()) {
+      if (metric.getKey().equals(key)) {
+        return metric;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import com.akelius.automation.data.TestData;
+import com.akelius.automation.util.Helper;
+
+/**
+ * Waits for conditions without polling on a fixed interval. Between two checks of the condition,
+ * the engine waits inside the browser for the next DOM change, so most conditions are checked
+ * right after the page changed. The maximum time between two checks grows with each failed check,
+ * so conditions that don't depend on the DOM don't flood the browser with requests.
+ */
+public class WaitEngine {
+
+  protected static final Logger logger = LogManager.getLogger(WaitEngine.class);
+
+  // statistics for all the waits of the run
+  private static final AtomicLong waitCount = new AtomicLong();
+  private static final AtomicLong totalWaitMillis = new AtomicLong();
+  private static final AtomicLong maxWaitMillis = new AtomicLong();
+  private static final AtomicLong timeoutCount = new AtomicLong();
+
+  private final WebDriver driver;
+  private final long timeoutMillis;
+
+  /**
+   * @param driver The driver to check the conditions with.
+   * @param timeoutMillis The maximum amount of time to wait for a condition in milliseconds.
+   */
+  public WaitEngine(WebDriver driver, long timeoutMillis) {
+    this.driver = driver;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Waits until the condition returns a value that is neither null nor false.
+   *
+   * @param condition The condition to wait for, e.g. one of the Selenium ExpectedConditions.
+   * @return The value returned by the condition.
+   */
+  public <T> T until(Function<? super WebDriver, T> condition) {
+    return until(condition.toString(), condition);
+  }
+
+  /**
+   * Waits until the condition returns a value that is neither null nor false. Elements that are not
+   * found (yet) or went stale while checking the condition count as a failed check.
+   *
+   * @param description A description of the condition, used in the logs and the timeout message.
+   * @param condition The condition to wait for.
+   * @return The value returned by the condition.
+   */
+  public <T> T until(String description, Function<? super WebDriver, T> condition) {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    long interval = TestData.WAIT_MIN_INTERVAL_MILLI;
+    RuntimeException lastException = null;
+
+    while (true) {
+      try {
+        T value = condition.apply(driver);
+        if (value != null && !Boolean.FALSE.equals(value)) {
+          record(description, start, false);
+          return value;
+        }
+      } catch (NotFoundException | StaleElementReferenceException e) {
+        lastException = e;
+      }
+
+      long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      if (remainingMillis <= 0) {
+        record(description, start, true);
+        throw new TimeoutException(
+            String.format(
+                "Expected condition failed: %s (waited %s ms)", description, timeoutMillis),
+            lastException);
+      }
+
+      waitForDomChange(Math.min(interval, remainingMillis));
+      interval = Math.min(interval * 2, TestData.WAIT_MAX_INTERVAL_MILLI);
+    }
+  }
+
+  /** @return A summary of all the waits of the run. */
+  public static String getStatistics() {
+    long count = waitCount.get();
+    return String.format(
+        "waits = %s, timeouts = %s, total wait = %s ms, average wait = %s ms, max wait = %s ms",
+        count,
+        timeoutCount.get(),
+        totalWaitMillis.get(),
+        count == 0 ? 0 : totalWaitMillis.get() / count,
+        maxWaitMillis.get());
+  }
+
+  /**
+   * Blocks until the DOM of the current page changes or the time is up, whichever comes first. If
+   * the script can't run (e.g. the page is navigating or an alert is open), it simply sleeps.
+   *
+   * @param maxMillis The maximum amount of time to wait in milliseconds.
+   */
+  private void waitForDomChange(long maxMillis) {
+    try {
+      ((JavascriptExecutor) driver)
+          .executeAsyncScript(TestData.WAIT_FOR_DOM_MUTATION_SCRIPT, maxMillis);
+    } catch (WebDriverException e) {
+      Helper.sleep(maxMillis);
+    }
+  }
+
+  private void record(String description, long startNanos, boolean timedOut) {
+    long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+    waitCount.incrementAndGet();
+    totalWaitMillis.addAndGet(waitedMillis);
+    maxWaitMillis.accumulateAndGet(waitedMillis, Math::max);
+    if (timedOut) {
+      timeoutCount.incrementAndGet();
+    }
+
+    logger.debug(
+        String.format(
+            "%s after %s ms: %s",
+            timedOut ? "Timed out" : "Done waiting", waitedMillis, description));
+  }
+}
@@ -9,6 +9,8 @@ public class Apartment {
   private String floor;
   private int rent;
   private String availableFrom;
+  // the id from the link to the detail page, not part of equals/hashCode which compare the values
+  private String id;
 
   public Apartment(
       String title,
@@ -123,4 +125,13 @@ public class Apartment {
   public void setAvailableFrom(String availableFrom) {
     this.availableFrom = availableFrom;
   }
+
+  /** @return The id of the apartment, or null if it's unknown. */
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
 }
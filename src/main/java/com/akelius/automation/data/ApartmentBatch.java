@@ -0,0 +1,306 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Holds many apartments in primitive-array columns instead of one object per apartment. The
+ * strings are stored once in a dictionary and the columns only keep their index, so a whole city
+ * of search results takes a handful of arrays that the garbage collector doesn't have to trace.
+ */
+public class ApartmentBatch {
+
+  /** The dictionary index of a missing string. */
+  static final int NO_STRING = -1;
+
+  private static final int DEFAULT_CAPACITY = 64;
+
+  private final List<String> strings = new ArrayList<>();
+  // only needed while apartments are added, dropped by trimToSize()
+  private Map<String, Integer> stringIds = new HashMap<>();
+
+  private int size;
+  private int[] titles;
+  private int[] addresses;
+  private float[] rooms;
+  private int[] sizes;
+  private int[] floors;
+  private int[] rents;
+  private int[] availableFrom;
+  // the dictionary index of the original text when it's not in the canonical format
+  private int[] roomsTexts;
+  private int[] availableFromTexts;
+  private int[] ids;
+
+  public ApartmentBatch() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /** @param capacity The number of apartments the batch can hold before it has to grow. */
+  public ApartmentBatch(int capacity) {
+    allocate(Math.max(capacity, 1));
+  }
+
+  /**
+   * @param apartments The apartments to add.
+   * @return A trimmed batch with all the apartments, in the same order.
+   */
+  public static ApartmentBatch of(List<Apartment> apartments) {
+    ApartmentBatch batch = new ApartmentBatch(apartments.size());
+    apartments.forEach(batch::add);
+    batch.trimToSize();
+    return batch;
+  }
+
+  /** @param apartment The apartment to add at the end of the batch. */
+  public void add(Apartment apartment) {
+    add(CompactApartment.of(apartment));
+  }
+
+  /** @param apartment The apartment to add at the end of the batch. */
+  public void add(CompactApartment apartment) {
+    add(
+        getStringId(apartment.getTitle()),
+        getStringId(apartment.getAddress()),
+        apartment.getRooms(),
+        apartment.getSize(),
+        getStringId(apartment.getFloor()),
+        apartment.getRent(),
+        apartment.getAvailableFrom(),
+        getStringId(apartment.getOriginalRoomsText()),
+        getStringId(apartment.getOriginalAvailableFromText()),
+        getStringId(apartment.getId()));
+  }
+
+  /** Adds an apartment whose strings are already in the dictionary, by their indexes. */
+  void add(
+      int titleId,
+      int addressId,
+      float roomCount,
+      int squareMeters,
+      int floorId,
+      int rent,
+      int availableFromDay,
+      int roomsTextId,
+      int availableFromTextId,
+      int id) {
+    if (size == titles.length) {
+      grow();
+    }
+    titles[size] = titleId;
+    addresses[size] = addressId;
+    rooms[size] = roomCount;
+    sizes[size] = squareMeters;
+    floors[size] = floorId;
+    rents[size] = rent;
+    availableFrom[size] = availableFromDay;
+    roomsTexts[size] = roomsTextId;
+    availableFromTexts[size] = availableFromTextId;
+    ids[size] = id;
+    size++;
+  }
+
+  /** @return The number of apartments in the batch. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param index The position of the apartment in the batch.
+   * @return The apartment at that position.
+   */
+  public CompactApartment get(int index) {
+    checkIndex(index);
+    return new CompactApartment(
+        getString(titles[index]),
+        getString(addresses[index]),
+        rooms[index],
+        sizes[index],
+        getString(floors[index]),
+        rents[index],
+        availableFrom[index],
+        getString(roomsTexts[index]),
+        getString(availableFromTexts[index]),
+        getString(ids[index]));
+  }
+
+  /** @return The apartments of the batch, created one at a time as the stream is consumed. */
+  public Stream<CompactApartment> stream() {
+    return IntStream.range(0, size).mapToObj(this::get);
+  }
+
+  public String getId(int index) {
+    checkIndex(index);
+    return getString(ids[index]);
+  }
+
+  public String getTitle(int index) {
+    checkIndex(index);
+    return getString(titles[index]);
+  }
+
+  public String getAddress(int index) {
+    checkIndex(index);
+    return getString(addresses[index]);
+  }
+
+  public float getRooms(int index) {
+    checkIndex(index);
+    return rooms[index];
+  }
+
+  public int getSize(int index) {
+    checkIndex(index);
+    return sizes[index];
+  }
+
+  public String getFloor(int index) {
+    checkIndex(index);
+    return getString(floors[index]);
+  }
+
+  public int getRent(int index) {
+    checkIndex(index);
+    return rents[index];
+  }
+
+  /** @return The epoch day, {@link CompactApartment#UNKNOWN_DATE} if unknown. */
+  public int getAvailableFrom(int index) {
+    checkIndex(index);
+    return availableFrom[index];
+  }
+
+  /**
+   * Shrinks the columns to the number of apartments and drops the dictionary lookup, once no more
+   * apartments will be added.
+   */
+  public void trimToSize() {
+    resize(size);
+    stringIds = null;
+  }
+
+  // the raw columns, for serialising the batch without creating the apartments
+  List<String> getStrings() {
+    return strings;
+  }
+
+  int[] getTitleIds() {
+    return titles;
+  }
+
+  int[] getAddressIds() {
+    return addresses;
+  }
+
+  float[] getRoomsColumn() {
+    return rooms;
+  }
+
+  int[] getSizesColumn() {
+    return sizes;
+  }
+
+  int[] getFloorIds() {
+    return floors;
+  }
+
+  int[] getRentsColumn() {
+    return rents;
+  }
+
+  int[] getAvailableFromColumn() {
+    return availableFrom;
+  }
+
+  int[] getRoomsTextIds() {
+    return roomsTexts;
+  }
+
+  int[] getAvailableFromTextIds() {
+    return availableFromTexts;
+  }
+
+  int[] getIdColumn() {
+    return ids;
+  }
+
+  /**
+   * @param value The string to look up, or null.
+   * @return The dictionary index of the string, added to the dictionary if it's not there yet.
+   */
+  int getStringId(String value) {
+    if (value == null) {
+      return NO_STRING;
+    }
+    if (stringIds == null) {
+      stringIds = new HashMap<>();
+      for (int i = 0; i < strings.size(); i++) {
+        stringIds.put(strings.get(i), i);
+      }
+    }
+    Integer id = stringIds.get(value);
+    if (id == null) {
+      id = strings.size();
+      strings.add(value);
+      stringIds.put(value, id);
+    }
+    return id;
+  }
+
+  private String getString(int id) {
+    return id == NO_STRING ? null : strings.get(id);
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private void allocate(int capacity) {
+    titles = new int[capacity];
+    addresses = new int[capacity];
+    rooms = new float[capacity];
+    sizes = new int[capacity];
+    floors = new int[capacity];
+    rents = new int[capacity];
+    availableFrom = new int[capacity];
+    roomsTexts = new int[capacity];
+    availableFromTexts = new int[capacity];
+    ids = new int[capacity];
+  }
+
+  private void grow() {
+    resize(Math.max(titles.length * 2, DEFAULT_CAPACITY));
+  }
+
+  private void resize(int capacity) {
+    titles = Arrays.copyOf(titles, capacity);
+    addresses = Arrays.copyOf(addresses, capacity);
+    rooms = Arrays.copyOf(rooms, capacity);
+    sizes = Arrays.copyOf(sizes, capacity);
+    floors = Arrays.copyOf(floors, capacity);
+    rents = Arrays.copyOf(rents, capacity);
+    availableFrom = Arrays.copyOf(availableFrom, capacity);
+    roomsTexts = Arrays.copyOf(roomsTexts, capacity);
+    availableFromTexts = Arrays.copyOf(availableFromTexts, capacity);
+    ids = Arrays.copyOf(ids, capacity);
+  }
+}
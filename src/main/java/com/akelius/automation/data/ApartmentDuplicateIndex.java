@@ -0,0 +1,165 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the duplicate apartments among search results, one apartment at a time as they are
+ * extracted. Two apartments are duplicates only if all their fields are equal after normalising
+ * the whitespace, so there are no false positives from hash collisions. Only a key string per
+ * distinct apartment is kept, not the Apartment objects themselves.
+ */
+public class ApartmentDuplicateIndex {
+
+  private static final char FIELD_SEPARATOR = '\u001F';
+  private static final String REPORT_FIELD_SEPARATOR = " | ";
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  /** The position of the first apartment seen for each key. */
+  private final Map<String, Integer> firstPositions = new HashMap<>();
+  /** The positions of all the apartments for the keys seen more than once, in insertion order. */
+  private final Map<String, List<Integer>> duplicatePositions = new LinkedHashMap<>();
+  private int count;
+
+  /**
+   * Adds the next apartment, its position is the number of apartments added before it.
+   *
+   * @param apartment The apartment to add.
+   * @return True if no equal apartment was added before, otherwise false.
+   */
+  public boolean add(Apartment apartment) {
+    int position = count++;
+    String key = getKey(apartment);
+    Integer firstPosition = firstPositions.putIfAbsent(key, position);
+    if (firstPosition == null) {
+      return true;
+    }
+
+    duplicatePositions
+        .computeIfAbsent(key, k -> new ArrayList<>(Collections.singletonList(firstPosition)))
+        .add(position);
+    return false;
+  }
+
+  /** @return The number of apartments added. */
+  public int size() {
+    return count;
+  }
+
+  /** @return The number of distinct apartments added. */
+  public int getDistinctCount() {
+    return firstPositions.size();
+  }
+
+  /** @return The number of apartments that are equal to an apartment added before them. */
+  public int getDuplicateCount() {
+    return count - firstPositions.size();
+  }
+
+  /** @return True if all the apartments added are distinct. */
+  public boolean isUnique() {
+    return duplicatePositions.isEmpty();
+  }
+
+  /** @return The groups of equal apartments, in the order their first duplicate was added. */
+  public List<DuplicateGroup> getDuplicateGroups() {
+    return duplicatePositions
+        .entrySet()
+        .stream()
+        .map(entry -> new DuplicateGroup(entry.getKey(), entry.getValue()))
+        .collect(Collectors.toList());
+  }
+
+  /** @return A readable report of the duplicate groups, one line per group. */
+  public String getReport() {
+    StringBuilder report =
+        new StringBuilder(
+            String.format(
+                "%s apartments, %s distinct, %s duplicates in %s groups.",
+                count, getDistinctCount(), getDuplicateCount(), duplicatePositions.size()));
+    getDuplicateGroups().forEach(group -> report.append(System.lineSeparator()).append(group));
+    return report.toString();
+  }
+
+  /**
+   * Builds the key that identifies an apartment: all its fields, with the whitespace of the text
+   * fields trimmed and collapsed, joined by a separator that can't be part of the text.
+   */
+  static String getKey(Apartment apartment) {
+    return new StringBuilder()
+        .append(normalise(apartment.getTitle()))
+        .append(FIELD_SEPARATOR)
+        .append(normalise(apartment.getAddress()))
+        .append(FIELD_SEPARATOR)
+        .append(normalise(apartment.getRooms()))
+        .append(FIELD_SEPARATOR)
+        .append(apartment.getSize())
+        .append(FIELD_SEPARATOR)
+        .append(normalise(apartment.getFloor()))
+        .append(FIELD_SEPARATOR)
+        .append(apartment.getRent())
+        .append(FIELD_SEPARATOR)
+        .append(normalise(apartment.getAvailableFrom()))
+        .toString();
+  }
+
+  private static String normalise(String value) {
+    // a null field gets its own marker so it doesn't collide with an empty text
+    return value == null ? "\u0000" : WHITESPACE.matcher(value.trim()).replaceAll(" ");
+  }
+
+  /** A group of equal apartments and their positions among the apartments added. */
+  public static class DuplicateGroup {
+
+    private final List<String> fields;
+    private final List<Integer> positions;
+
+    DuplicateGroup(String key, List<Integer> positions) {
+      this.fields =
+          Collections.unmodifiableList(
+              Arrays.asList(key.split(String.valueOf(FIELD_SEPARATOR), -1)));
+      this.positions = Collections.unmodifiableList(new ArrayList<>(positions));
+    }
+
+    /** @return The normalised field values shared by the apartments of the group. */
+    public List<String> getFields() {
+      return fields;
+    }
+
+    /** @return The positions of the apartments of the group, in ascending order. */
+    public List<Integer> getPositions() {
+      return positions;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s x [%s] at positions %s",
+          positions.size(),
+          fields
+              .stream()
+              .map(field -> field.replace("\u0000", "null"))
+              .collect(Collectors.joining(REPORT_FIELD_SEPARATOR)),
+          positions);
+    }
+  }
+}
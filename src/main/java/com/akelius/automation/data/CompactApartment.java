@@ -0,0 +1,312 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.data;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+
+/**
+ * An immutable, compact form of an {@link Apartment} for holding many search results in memory.
+ * The rooms are kept as a number and the available from date as an epoch day, the addresses and
+ * floors are interned so the values shared by many apartments are stored once, and the hash is
+ * computed once. Titles are mostly unique, so they are not interned. A rooms or date text that
+ * can't be parsed, or that is formatted differently, is kept as it is, so {@link #toApartment()}
+ * always gives back the original values. Like {@link Apartment}, the id is not part of equals and
+ * hashCode.
+ */
+public final class CompactApartment {
+
+  /** The epoch day of an apartment whose available from date could not be parsed. */
+  public static final int UNKNOWN_DATE = Integer.MIN_VALUE;
+
+  static final DateTimeFormatter DATE_FORMAT =
+      DateTimeFormatter.ofPattern(TestData.AVAILABLE_FROM_DATE_PATTERN);
+
+  private final String title;
+  private final String address;
+  private final float rooms;
+  private final int size;
+  private final String floor;
+  private final int rent;
+  private final int availableFrom;
+  // only set when the text could not be parsed or is not in the canonical format
+  private final String roomsText;
+  private final String availableFromText;
+  private final String id;
+  private final int hash;
+
+  /**
+   * @param title The title of the apartment.
+   * @param address The address of the apartment.
+   * @param rooms The number of rooms, NaN if unknown.
+   * @param size The size in square meters.
+   * @param floor The floor description.
+   * @param rent The rent in euros.
+   * @param availableFrom The epoch day the apartment is available from, or {@link #UNKNOWN_DATE}.
+   */
+  public CompactApartment(
+      String title,
+      String address,
+      float rooms,
+      int size,
+      String floor,
+      int rent,
+      int availableFrom) {
+    this(title, address, rooms, size, floor, rent, availableFrom, null, null, null);
+  }
+
+  CompactApartment(
+      String title,
+      String address,
+      float rooms,
+      int size,
+      String floor,
+      int rent,
+      int availableFrom,
+      String roomsText,
+      String availableFromText,
+      String id) {
+    this.title = title;
+    this.address = intern(address);
+    this.rooms = rooms;
+    this.size = size;
+    this.floor = intern(floor);
+    this.rent = rent;
+    this.availableFrom = availableFrom;
+    this.roomsText = roomsText;
+    this.availableFromText = availableFromText;
+    this.id = id;
+    this.hash =
+        Objects.hash(
+            this.title,
+            this.address,
+            rooms,
+            size,
+            this.floor,
+            rent,
+            availableFrom,
+            this.roomsText,
+            this.availableFromText);
+  }
+
+  /**
+   * @param apartment The apartment as extracted from the page.
+   * @return The compact form of the apartment.
+   */
+  public static CompactApartment of(Apartment apartment) {
+    float rooms = parseRooms(apartment.getRooms());
+    String availableFromText = null;
+    int availableFrom = parseCanonicalAvailableFrom(apartment.getAvailableFrom());
+    if (availableFrom == UNKNOWN_DATE) {
+      availableFrom = parseAvailableFrom(apartment.getAvailableFrom());
+      availableFromText = apartment.getAvailableFrom();
+    }
+    return new CompactApartment(
+        apartment.getTitle(),
+        apartment.getAddress(),
+        rooms,
+        apartment.getSize(),
+        apartment.getFloor(),
+        apartment.getRent(),
+        availableFrom,
+        Float.isNaN(rooms) || !formatRooms(rooms).equals(apartment.getRooms())
+            ? apartment.getRooms()
+            : null,
+        availableFromText,
+        apartment.getId());
+  }
+
+  /** @return An Apartment with the same values as the ones it was created from. */
+  public Apartment toApartment() {
+    Apartment apartment =
+        new Apartment(title, address, getRoomsText(), size, floor, rent, getAvailableFromText());
+    apartment.setId(id);
+    return apartment;
+  }
+
+  /**
+   * @param text The rooms as displayed, with a dot or a comma as decimal separator.
+   * @return The number of rooms, or NaN if the text is not a number.
+   */
+  public static float parseRooms(String text) {
+    if (text == null) {
+      return Float.NaN;
+    }
+    try {
+      return Float.parseFloat(text.trim().replace(',', '.'));
+    } catch (NumberFormatException e) {
+      return Float.NaN;
+    }
+  }
+
+  /**
+   * @param text The date as displayed.
+   * @return The epoch day of the date, or {@link #UNKNOWN_DATE} if the text is not a date.
+   */
+  public static int parseAvailableFrom(String text) {
+    if (text == null) {
+      return UNKNOWN_DATE;
+    }
+    try {
+      return (int) LocalDate.parse(text.trim(), DATE_FORMAT).toEpochDay();
+    } catch (DateTimeParseException e) {
+      return UNKNOWN_DATE;
+    }
+  }
+
+  /** @return The rooms in the canonical format, without a trailing ".0" for whole numbers. */
+  static String formatRooms(float rooms) {
+    return rooms == (long) rooms ? String.valueOf((long) rooms) : String.valueOf(rooms);
+  }
+
+  /**
+   * Parses a date that is exactly in the canonical format without going through the formatter,
+   * which is the slow part of converting many apartments.
+   *
+   * @return The epoch day of the date, or {@link #UNKNOWN_DATE} if the text is not exactly a date
+   *     in the canonical format.
+   */
+  private static int parseCanonicalAvailableFrom(String text) {
+    if (text == null
+        || text.length() != TestData.AVAILABLE_FROM_DATE_PATTERN.length()
+        || text.charAt(2) != '.'
+        || text.charAt(5) != '.') {
+      return UNKNOWN_DATE;
+    }
+    int day = parseDigits(text, 0, 2);
+    int month = parseDigits(text, 3, 5);
+    int year = parseDigits(text, 6, 10);
+    if (day < 0 || month < 0 || year < 0) {
+      return UNKNOWN_DATE;
+    }
+    try {
+      return (int) LocalDate.of(year, month, day).toEpochDay();
+    } catch (DateTimeException e) {
+      return UNKNOWN_DATE;
+    }
+  }
+
+  /** @return The number between the indexes, or -1 if it's not only digits. */
+  private static int parseDigits(String text, int start, int end) {
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      char digit = text.charAt(i);
+      if (digit < '0' || digit > '9') {
+        return -1;
+      }
+      value = value * 10 + digit - '0';
+    }
+    return value;
+  }
+
+  static String formatAvailableFrom(int epochDay) {
+    return LocalDate.ofEpochDay(epochDay).format(DATE_FORMAT);
+  }
+
+  private static String intern(String value) {
+    return value == null ? null : value.intern();
+  }
+
+  /** @return The id of the apartment, or null if it's unknown. */
+  public String getId() {
+    return id;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getAddress() {
+    return address;
+  }
+
+  /** @return The number of rooms, NaN if it could not be parsed. */
+  public float getRooms() {
+    return rooms;
+  }
+
+  /** @return The rooms as displayed. */
+  public String getRoomsText() {
+    if (roomsText != null || Float.isNaN(rooms)) {
+      return roomsText;
+    }
+    return formatRooms(rooms);
+  }
+
+  /** @return The rooms text when it's not in the canonical format, otherwise null. */
+  String getOriginalRoomsText() {
+    return roomsText;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public String getFloor() {
+    return floor;
+  }
+
+  public int getRent() {
+    return rent;
+  }
+
+  /** @return The epoch day the apartment is available from, {@link #UNKNOWN_DATE} if unknown. */
+  public int getAvailableFrom() {
+    return availableFrom;
+  }
+
+  /** @return The available from date as displayed. */
+  public String getAvailableFromText() {
+    if (availableFromText != null || availableFrom == UNKNOWN_DATE) {
+      return availableFromText;
+    }
+    return formatAvailableFrom(availableFrom);
+  }
+
+  /** @return The date text when it's not in the canonical format, otherwise null. */
+  String getOriginalAvailableFromText() {
+    return availableFromText;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) return true;
+    if (!(obj instanceof CompactApartment)) return false;
+    CompactApartment other = (CompactApartment) obj;
+    return hash == other.hash
+        && size == other.size
+        && rent == other.rent
+        && availableFrom == other.availableFrom
+        && Float.compare(rooms, other.rooms) == 0
+        && Objects.equals(title, other.title)
+        && Objects.equals(address, other.address)
+        && Objects.equals(floor, other.floor)
+        && Objects.equals(roomsText, other.roomsText)
+        && Objects.equals(availableFromText, other.availableFromText);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s, %s, %s rooms, %s m², %s, € %s, available from %s",
+        title, address, getRoomsText(), size, floor, rent, getAvailableFromText());
+  }
+}
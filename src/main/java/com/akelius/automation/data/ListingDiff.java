@@ -0,0 +1,370 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.data;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Compares the current apartment search results with a baseline, for example the latest snapshot
+ * of the city, and reports the apartments that were added, removed or changed. The apartments are
+ * matched by their id when both sides know it, otherwise by their address, floor, size and rooms;
+ * ids are only used at all if every baseline apartment has one. Baseline apartments sharing a key
+ * are matched one by one, and any left over are reported as removed. The baseline is indexed once,
+ * and each current apartment is checked in constant time as it is accepted, so the differences can
+ * be emitted while the search results are still being harvested.
+ */
+public class ListingDiff {
+
+  public enum ChangeType {
+    ADDED,
+    REMOVED,
+    CHANGED
+  }
+
+  public enum Field {
+    TITLE,
+    ADDRESS,
+    ROOMS,
+    SIZE,
+    FLOOR,
+    RENT,
+    AVAILABLE_FROM
+  }
+
+  private final ApartmentBatch baseline;
+  private final boolean matchById;
+  private final RowIndex rowsById;
+  // only built once it is needed when the baseline is matched by id
+  private RowIndex rowsByValues;
+  private final BitSet matchedRows;
+  private final Set<String> currentIds = new HashSet<>();
+  private final Consumer<Change> listener;
+  private final Map<ChangeType, Integer> counts = new HashMap<>();
+  private int unchanged;
+  private boolean finished;
+  // only kept by compare(), the streaming mode leaves the differences to the listener
+  private List<Change> changes;
+
+  /**
+   * Starts a comparison in streaming mode: the added and changed apartments are emitted as soon as
+   * they are accepted, the removed ones when the comparison is finished.
+   *
+   * @param baseline The apartments to compare with.
+   * @param listener Receives every difference found.
+   */
+  public ListingDiff(ApartmentBatch baseline, Consumer<Change> listener) {
+    this.baseline = baseline;
+    this.listener = listener;
+    this.matchedRows = new BitSet(baseline.size());
+    boolean allIds = true;
+    for (int row = 0; row < baseline.size() && allIds; row++) {
+      allIds = baseline.getId(row) != null;
+    }
+    this.matchById = allIds;
+    if (matchById) {
+      this.rowsById = new RowIndex(baseline, baseline::getId);
+    } else {
+      this.rowsById = null;
+      this.rowsByValues = new RowIndex(baseline, row -> getValuesKey(baseline, row));
+    }
+    for (ChangeType type : ChangeType.values()) {
+      counts.put(type, 0);
+    }
+  }
+
+  /**
+   * Compares a complete list of apartments with a baseline.
+   *
+   * @param baseline The apartments to compare with.
+   * @param current The current apartments.
+   * @return The finished comparison, with the differences in {@link #getChanges()}.
+   */
+  public static ListingDiff compare(ApartmentBatch baseline, Iterable<Apartment> current) {
+    List<Change> changes = new ArrayList<>();
+    ListingDiff diff = new ListingDiff(baseline, changes::add);
+    diff.changes = changes;
+    current.forEach(diff::accept);
+    diff.finish();
+    return diff;
+  }
+
+  /**
+   * Compares the next current apartment with the baseline. An apartment with the same id as one
+   * accepted before is ignored.
+   *
+   * @param apartment The apartment to compare.
+   */
+  public void accept(Apartment apartment) {
+    if (finished) {
+      throw new IllegalStateException("The comparison is already finished.");
+    }
+
+    CompactApartment current = CompactApartment.of(apartment);
+    if (current.getId() != null && !currentIds.add(current.getId())) {
+      return;
+    }
+
+    String key;
+    int row;
+    if (matchById && current.getId() != null) {
+      key = current.getId();
+      row = rowsById.nextUnmatched(key, matchedRows);
+    } else {
+      key =
+          getValuesKey(
+              current.getAddress(), current.getFloor(), current.getSize(), current.getRooms());
+      if (rowsByValues == null) {
+        rowsByValues = new RowIndex(baseline, index -> getValuesKey(baseline, index));
+      }
+      row = rowsByValues.nextUnmatched(key, matchedRows);
+    }
+    if (row < 0) {
+      emit(new Change(ChangeType.ADDED, key, null, current, EnumSet.noneOf(Field.class)));
+      return;
+    }
+
+    matchedRows.set(row);
+    CompactApartment before = baseline.get(row);
+    Set<Field> changedFields = getChangedFields(before, current);
+    if (changedFields.isEmpty()) {
+      unchanged++;
+    } else {
+      emit(new Change(ChangeType.CHANGED, key, before, current, changedFields));
+    }
+  }
+
+  /** Emits the baseline apartments that were not accepted as removed, and ends the comparison. */
+  public void finish() {
+    if (finished) {
+      return;
+    }
+    finished = true;
+
+    for (int row = matchedRows.nextClearBit(0);
+        row < baseline.size();
+        row = matchedRows.nextClearBit(row + 1)) {
+      String key = matchById ? baseline.getId(row) : getValuesKey(baseline, row);
+      emit(
+          new Change(
+              ChangeType.REMOVED, key, baseline.get(row), null, EnumSet.noneOf(Field.class)));
+    }
+  }
+
+  /** @return The number of differences of a type found so far. */
+  public int getCount(ChangeType type) {
+    return counts.get(type);
+  }
+
+  /** @return The number of apartments found in the baseline without any change. */
+  public int getUnchangedCount() {
+    return unchanged;
+  }
+
+  /** @return True if no difference was found. */
+  public boolean isEmpty() {
+    return counts.values().stream().allMatch(count -> count == 0);
+  }
+
+  /**
+   * @return The differences found by {@link #compare(ApartmentBatch, Iterable)}, the streaming mode
+   *     only passes them to its listener.
+   */
+  public List<Change> getChanges() {
+    return changes == null ? Collections.emptyList() : Collections.unmodifiableList(changes);
+  }
+
+  /** @return A summary of the comparison followed by one line per difference found. */
+  public String getReport() {
+    StringBuilder report =
+        new StringBuilder(
+            String.format(
+                "%s added, %s removed, %s changed, %s unchanged.",
+                getCount(ChangeType.ADDED),
+                getCount(ChangeType.REMOVED),
+                getCount(ChangeType.CHANGED),
+                unchanged));
+    getChanges().forEach(change -> report.append(System.lineSeparator()).append(change));
+    return report.toString();
+  }
+
+  private static String getValuesKey(ApartmentBatch apartments, int row) {
+    return getValuesKey(
+        apartments.getAddress(row),
+        apartments.getFloor(row),
+        apartments.getSize(row),
+        apartments.getRooms(row));
+  }
+
+  private static String getValuesKey(String address, String floor, int size, float rooms) {
+    return String.join(
+        " | ", String.valueOf(address), String.valueOf(floor), size + " m²", rooms + " rooms");
+  }
+
+  private static Set<Field> getChangedFields(CompactApartment before, CompactApartment after) {
+    Set<Field> fields = EnumSet.noneOf(Field.class);
+    if (!Objects.equals(before.getTitle(), after.getTitle())) {
+      fields.add(Field.TITLE);
+    }
+    if (!Objects.equals(before.getAddress(), after.getAddress())) {
+      fields.add(Field.ADDRESS);
+    }
+    if (Float.compare(before.getRooms(), after.getRooms()) != 0
+        || !Objects.equals(before.getOriginalRoomsText(), after.getOriginalRoomsText())) {
+      fields.add(Field.ROOMS);
+    }
+    if (before.getSize() != after.getSize()) {
+      fields.add(Field.SIZE);
+    }
+    if (!Objects.equals(before.getFloor(), after.getFloor())) {
+      fields.add(Field.FLOOR);
+    }
+    if (before.getRent() != after.getRent()) {
+      fields.add(Field.RENT);
+    }
+    if (before.getAvailableFrom() != after.getAvailableFrom()
+        || !Objects.equals(
+            before.getOriginalAvailableFromText(), after.getOriginalAvailableFromText())) {
+      fields.add(Field.AVAILABLE_FROM);
+    }
+    return fields;
+  }
+
+  private void emit(Change change) {
+    counts.merge(change.getType(), 1, Integer::sum);
+    listener.accept(change);
+  }
+
+  /**
+   * The baseline rows by key. Rows sharing a key are chained in baseline order, so each of them is
+   * matched by one current apartment before any is reported as removed.
+   */
+  private static class RowIndex {
+
+    private final Map<String, Integer> firstRows;
+    private final int[] nextRows;
+
+    RowIndex(ApartmentBatch baseline, IntFunction<String> keys) {
+      firstRows = new HashMap<>(baseline.size() * 4 / 3 + 1);
+      nextRows = new int[baseline.size()];
+      for (int row = baseline.size() - 1; row >= 0; row--) {
+        Integer next = firstRows.put(keys.apply(row), row);
+        nextRows[row] = next == null ? -1 : next;
+      }
+    }
+
+    /** @return The first row with the key that is not matched yet, or -1 if there is none. */
+    int nextUnmatched(String key, BitSet matchedRows) {
+      Integer first = firstRows.get(key);
+      int row = first == null ? -1 : first;
+      while (row >= 0 && matchedRows.get(row)) {
+        row = nextRows[row];
+      }
+      return row;
+    }
+  }
+
+  /** A difference between the baseline and the current apartments. */
+  public static class Change {
+
+    private final ChangeType type;
+    private final String key;
+    private final CompactApartment before;
+    private final CompactApartment after;
+    private final Set<Field> changedFields;
+
+    Change(
+        ChangeType type,
+        String key,
+        CompactApartment before,
+        CompactApartment after,
+        Set<Field> changedFields) {
+      this.type = type;
+      this.key = key;
+      this.before = before;
+      this.after = after;
+      this.changedFields = Collections.unmodifiableSet(changedFields);
+    }
+
+    public ChangeType getType() {
+      return type;
+    }
+
+    /** @return The id of the apartment, or the values it was matched by if the id is unknown. */
+    public String getKey() {
+      return key;
+    }
+
+    /** @return The apartment in the baseline, null if it was added. */
+    public CompactApartment getBefore() {
+      return before;
+    }
+
+    /** @return The current apartment, null if it was removed. */
+    public CompactApartment getAfter() {
+      return after;
+    }
+
+    /** @return The fields that changed, empty unless the apartment was changed. */
+    public Set<Field> getChangedFields() {
+      return changedFields;
+    }
+
+    @Override
+    public String toString() {
+      switch (type) {
+        case ADDED:
+          return String.format("ADDED [%s] %s", key, after);
+        case REMOVED:
+          return String.format("REMOVED [%s] %s", key, before);
+        default:
+          StringBuilder text = new StringBuilder(String.format("CHANGED [%s]", key));
+          for (Field field : changedFields) {
+            text.append(
+                String.format(
+                    " %s: %s -> %s", field, getValue(before, field), getValue(after, field)));
+          }
+          return text.toString();
+      }
+    }
+
+    private static Object getValue(CompactApartment apartment, Field field) {
+      switch (field) {
+        case TITLE:
+          return apartment.getTitle();
+        case ADDRESS:
+          return apartment.getAddress();
+        case ROOMS:
+          return apartment.getRoomsText();
+        case SIZE:
+          return apartment.getSize();
+        case FLOOR:
+          return apartment.getFloor();
+        case RENT:
+          return apartment.getRent();
+        default:
+          return apartment.getAvailableFromText();
+      }
+    }
+  }
+}
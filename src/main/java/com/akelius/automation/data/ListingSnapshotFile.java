@@ -0,0 +1,439 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A file of apartment search result snapshots in a columnar format. Each snapshot is an
+ * independent segment appended at the end of the file, so one file holds many cities and runs, and
+ * a run that dies while writing only loses its own segment: the next append cuts the incomplete
+ * segment off before writing its own. The segments are memory-mapped for
+ * reading: the numeric values are read straight from their column and the strings are only
+ * decoded when they are asked for.
+ *
+ * <p>Segment layout, all integers big-endian:
+ *
+ * <pre>
+ * int magic, int version, int segment length in bytes, long timestamp,
+ * int row count, int string count, int city string id,
+ * int[string count + 1] string offsets,
+ * int[row count] x 10 columns: title, address, rooms (float bits), size, floor, rent,
+ *                              available from (epoch day), rooms text, available from text, id,
+ * byte[] UTF-8 string data, padded to 4 bytes
+ * </pre>
+ *
+ */
+public class ListingSnapshotFile {
+
+  protected static final Logger logger = LogManager.getLogger(ListingSnapshotFile.class);
+
+  private static final int MAGIC = 0x414B4C53; // "AKLS"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+  private static final int COLUMN_COUNT = 10;
+
+  /** File locks are held by the whole JVM, so the threads of one run take turns before locking. */
+  private static final Object appendLock = new Object();
+
+  private final List<Segment> segments;
+
+  private ListingSnapshotFile(List<Segment> segments) {
+    this.segments = Collections.unmodifiableList(segments);
+  }
+
+  /**
+   * Appends a snapshot of the apartments of a city as a new segment at the end of the file. The
+   * file is created if it doesn't exist yet.
+   *
+   * @param file The snapshot file.
+   * @param city The city the apartments were searched in.
+   * @param timestamp The time the apartments were extracted, in epoch milliseconds.
+   * @param apartments The apartments to save.
+   */
+  public static void append(Path file, String city, long timestamp, ApartmentBatch apartments)
+      throws IOException {
+    ByteBuffer segment = encode(city, timestamp, apartments);
+    synchronized (appendLock) {
+      try (FileChannel channel =
+          FileChannel.open(
+              file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        // other runs may append to the same file at the same time
+        FileLock lock = channel.lock();
+        try {
+          // only a writer that died leaves an incomplete segment behind while the file is locked
+          long end = readSegments(channel, file, null);
+          if (end < channel.size()) {
+            if (channel.size() - end >= HEADER_BYTES && !hasSegmentHeader(channel, end)) {
+              throw new IOException(
+                  String.format(
+                      "%s has data that is not a snapshot segment at byte %s, not appending to it.",
+                      file, end));
+            }
+            logger.warn(
+                String.format(
+                    "Removing %s bytes of an incomplete snapshot segment at the end of %s.",
+                    channel.size() - end, file));
+            channel.truncate(end);
+          }
+
+          long position = end;
+          while (segment.hasRemaining()) {
+            position += channel.write(segment, position);
+          }
+          channel.force(false);
+        } finally {
+          lock.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Maps all the segments of a snapshot file. A segment that was not completely written is
+   * skipped together with anything after it.
+   *
+   * @param file The snapshot file.
+   * @return The snapshot file, with its segments in the order they were appended.
+   */
+  public static ListingSnapshotFile open(Path file) throws IOException {
+    List<Segment> segments = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      readSegments(channel, file, segments);
+    }
+    return new ListingSnapshotFile(segments);
+  }
+
+  /** @return True if a segment of this version starts at the position. */
+  private static boolean hasSegmentHeader(FileChannel channel, long position) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+    while (header.hasRemaining()) {
+      if (channel.read(header, position + header.position()) < 0) {
+        return false;
+      }
+    }
+    header.flip();
+    return header.getInt() == MAGIC && header.getInt() == VERSION;
+  }
+
+  /**
+   * Walks the segment headers from the start of the file, up to the first one that is invalid or
+   * not completely written.
+   *
+   * @param segments Receives the mapped segments, null to only find where they end.
+   * @return The position right after the last complete segment.
+   */
+  private static long readSegments(FileChannel channel, Path file, List<Segment> segments)
+      throws IOException {
+    long position = 0;
+    long fileSize = channel.size();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+    while (position + HEADER_BYTES <= fileSize) {
+      header.clear();
+      while (header.hasRemaining()) {
+        if (channel.read(header, position + header.position()) < 0) {
+          break;
+        }
+      }
+      header.flip();
+      int magic = header.getInt();
+      int version = header.getInt();
+      int length = header.getInt();
+      if (magic != MAGIC || version != VERSION || length < HEADER_BYTES) {
+        logger.warn(
+            String.format(
+                "Invalid snapshot segment at byte %s of %s, ignoring the rest of the file.",
+                position, file));
+        return position;
+      }
+      if (position + length > fileSize) {
+        logger.warn(
+            String.format(
+                "Incomplete snapshot segment at byte %s of %s, ignoring it.", position, file));
+        return position;
+      }
+
+      if (segments != null) {
+        // the mapping stays valid after the channel is closed
+        segments.add(new Segment(channel.map(FileChannel.MapMode.READ_ONLY, position, length)));
+      }
+      position += length;
+    }
+    return position;
+  }
+
+  /** @return All the segments, in the order they were appended. */
+  public List<Segment> getSegments() {
+    return segments;
+  }
+
+  /**
+   * @param city The city to look for.
+   * @return The segments of the city, in the order they were appended.
+   */
+  public List<Segment> getSegments(String city) {
+    return segments
+        .stream()
+        .filter(segment -> segment.getCity().equals(city))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * @param city The city to look for.
+   * @return The most recent snapshot of the city, if any.
+   */
+  public Optional<Segment> findLatest(String city) {
+    return findLatestBefore(city, Long.MAX_VALUE);
+  }
+
+  /**
+   * @param city The city to look for.
+   * @param timestamp The time in epoch milliseconds the snapshot must be older than.
+   * @return The most recent snapshot of the city taken before the time, if any.
+   */
+  public Optional<Segment> findLatestBefore(String city, long timestamp) {
+    Segment latest = null;
+    for (Segment segment : segments) {
+      if (segment.getTimestamp() < timestamp
+          && segment.getCity().equals(city)
+          && (latest == null || segment.getTimestamp() >= latest.getTimestamp())) {
+        latest = segment;
+      }
+    }
+    return Optional.ofNullable(latest);
+  }
+
+  private static ByteBuffer encode(String city, long timestamp, ApartmentBatch apartments) {
+    List<String> strings = new ArrayList<>(apartments.getStrings());
+    int cityId = strings.indexOf(city);
+    if (cityId == -1) {
+      cityId = strings.size();
+      strings.add(city);
+    }
+    List<byte[]> encodedStrings = new ArrayList<>(strings.size());
+    int stringBytes = 0;
+    for (String string : strings) {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      encodedStrings.add(bytes);
+      stringBytes += bytes.length;
+    }
+
+    int rows = apartments.size();
+    int length =
+        HEADER_BYTES
+            + (strings.size() + 1) * Integer.BYTES
+            + COLUMN_COUNT * rows * Integer.BYTES
+            + align(stringBytes);
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    buffer
+        .putInt(MAGIC)
+        .putInt(VERSION)
+        .putInt(length)
+        .putLong(timestamp)
+        .putInt(rows)
+        .putInt(strings.size())
+        .putInt(cityId);
+
+    int offset = 0;
+    for (byte[] bytes : encodedStrings) {
+      buffer.putInt(offset);
+      offset += bytes.length;
+    }
+    buffer.putInt(offset);
+
+    buffer.asIntBuffer().put(apartments.getTitleIds(), 0, rows);
+    buffer.position(buffer.position() + rows * Integer.BYTES);
+    buffer.asIntBuffer().put(apartments.getAddressIds(), 0, rows);
+    buffer.position(buffer.position() + rows * Integer.BYTES);
+    float[] rooms = apartments.getRoomsColumn();
+    for (int i = 0; i < rows; i++) {
+      buffer.putFloat(rooms[i]);
+    }
+    for (int[] column :
+        new int[][] {
+          apartments.getSizesColumn(),
+          apartments.getFloorIds(),
+          apartments.getRentsColumn(),
+          apartments.getAvailableFromColumn(),
+          apartments.getRoomsTextIds(),
+          apartments.getAvailableFromTextIds(),
+          apartments.getIdColumn()
+        }) {
+      buffer.asIntBuffer().put(column, 0, rows);
+      buffer.position(buffer.position() + rows * Integer.BYTES);
+    }
+
+    encodedStrings.forEach(buffer::put);
+    buffer.rewind();
+    return buffer;
+  }
+
+  private static int align(int bytes) {
+    return (bytes + Integer.BYTES - 1) / Integer.BYTES * Integer.BYTES;
+  }
+
+  /** A snapshot of the apartments of one city, read from its memory-mapped segment. */
+  public static class Segment {
+
+    private static final int COLUMN_TITLE = 0;
+    private static final int COLUMN_ADDRESS = 1;
+    private static final int COLUMN_ROOMS = 2;
+    private static final int COLUMN_SIZE = 3;
+    private static final int COLUMN_FLOOR = 4;
+    private static final int COLUMN_RENT = 5;
+    private static final int COLUMN_AVAILABLE_FROM = 6;
+    private static final int COLUMN_ROOMS_TEXT = 7;
+    private static final int COLUMN_AVAILABLE_FROM_TEXT = 8;
+    private static final int COLUMN_ID = 9;
+
+    private final ByteBuffer buffer;
+    private final long timestamp;
+    private final int rows;
+    private final int stringCount;
+    private final int cityId;
+    private final int stringOffsetsStart;
+    private final int columnsStart;
+    private final int stringDataStart;
+
+    private Segment(ByteBuffer buffer) {
+      this.buffer = buffer;
+      timestamp = buffer.getLong(3 * Integer.BYTES);
+      rows = buffer.getInt(3 * Integer.BYTES + Long.BYTES);
+      stringCount = buffer.getInt(4 * Integer.BYTES + Long.BYTES);
+      cityId = buffer.getInt(5 * Integer.BYTES + Long.BYTES);
+      stringOffsetsStart = HEADER_BYTES;
+      columnsStart = stringOffsetsStart + (stringCount + 1) * Integer.BYTES;
+      stringDataStart = columnsStart + COLUMN_COUNT * rows * Integer.BYTES;
+    }
+
+    public String getCity() {
+      return getString(cityId);
+    }
+
+    /** @return The time the apartments were extracted, in epoch milliseconds. */
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    /** @return The number of apartments in the snapshot. */
+    public int size() {
+      return rows;
+    }
+
+    /** @return The id of the apartment, or null if it's unknown. */
+    public String getId(int index) {
+      return getString(getInt(COLUMN_ID, index));
+    }
+
+    public String getTitle(int index) {
+      return getString(getInt(COLUMN_TITLE, index));
+    }
+
+    public String getAddress(int index) {
+      return getString(getInt(COLUMN_ADDRESS, index));
+    }
+
+    public float getRooms(int index) {
+      return Float.intBitsToFloat(getInt(COLUMN_ROOMS, index));
+    }
+
+    public int getSize(int index) {
+      return getInt(COLUMN_SIZE, index);
+    }
+
+    public String getFloor(int index) {
+      return getString(getInt(COLUMN_FLOOR, index));
+    }
+
+    public int getRent(int index) {
+      return getInt(COLUMN_RENT, index);
+    }
+
+    /** @return The epoch day, {@link CompactApartment#UNKNOWN_DATE} if unknown. */
+    public int getAvailableFrom(int index) {
+      return getInt(COLUMN_AVAILABLE_FROM, index);
+    }
+
+    /** @return All the apartments of the snapshot, decoded into a batch. */
+    public ApartmentBatch toBatch() {
+      ApartmentBatch batch = new ApartmentBatch(rows);
+      // adding the strings in order gives them the same ids in the batch
+      for (int id = 0; id < stringCount; id++) {
+        batch.getStringId(getString(id));
+      }
+
+      int[][] columns = new int[COLUMN_COUNT][rows];
+      for (int column = 0; column < COLUMN_COUNT; column++) {
+        getColumn(column).get(columns[column]);
+      }
+      for (int i = 0; i < rows; i++) {
+        batch.add(
+            columns[COLUMN_TITLE][i],
+            columns[COLUMN_ADDRESS][i],
+            Float.intBitsToFloat(columns[COLUMN_ROOMS][i]),
+            columns[COLUMN_SIZE][i],
+            columns[COLUMN_FLOOR][i],
+            columns[COLUMN_RENT][i],
+            columns[COLUMN_AVAILABLE_FROM][i],
+            columns[COLUMN_ROOMS_TEXT][i],
+            columns[COLUMN_AVAILABLE_FROM_TEXT][i],
+            columns[COLUMN_ID][i]);
+      }
+      batch.trimToSize();
+      return batch;
+    }
+
+    private int getInt(int column, int index) {
+      if (index < 0 || index >= rows) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rows);
+      }
+      return buffer.getInt(columnsStart + (column * rows + index) * Integer.BYTES);
+    }
+
+    private IntBuffer getColumn(int column) {
+      ByteBuffer view = buffer.duplicate();
+      view.position(columnsStart + column * rows * Integer.BYTES);
+      view.limit(view.position() + rows * Integer.BYTES);
+      return view.slice().asIntBuffer();
+    }
+
+    private String getString(int id) {
+      if (id == ApartmentBatch.NO_STRING) {
+        return null;
+      }
+      int start = buffer.getInt(stringOffsetsStart + id * Integer.BYTES);
+      int end = buffer.getInt(stringOffsetsStart + (id + 1) * Integer.BYTES);
+      byte[] bytes = new byte[end - start];
+      ByteBuffer view = buffer.duplicate();
+      view.position(stringDataStart + start);
+      view.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -26,8 +26,35 @@ public class TestData {
   public static final String FIREFOX_BROWSER = "firefox";
   public static final String CHROME_BROWSER = "chrome";
   public static final ExecutionMode EXECUTION_MODE =
-      ExecutionMode.valueOf(System.getProperty("executionMode"));
+      ExecutionMode.valueOf(System.getProperty("executionMode", ExecutionMode.LOCAL.name()));
   public static final String BROWSER = System.getProperty(BROWSER_PROPERTY);
+  public static final int POOL_SIZE = Integer.getInteger("poolSize", 0);
+  public static final boolean COLLECT_NETWORK_TIMINGS = Boolean.getBoolean("networkTimings");
+  public static final String PERFORMANCE_BUDGET_MODE =
+      System.getProperty("performanceBudgets", "warn");
+  public static final String PERFORMANCE_BUDGETS_FILE =
+      System.getProperty("performanceBudgetsFile");
+  public static final boolean USE_FIXTURE_SERVER = Boolean.getBoolean("fixtureServer");
+  public static final int FIXTURE_SERVER_PORT = Integer.getInteger("fixtureServerPort", 8089);
+  public static final int FIXTURE_SERVER_LATENCY_MILLI = Integer.getInteger("fixtureLatency", 0);
+  public static final int FIXTURE_SERVER_JITTER_MILLI = Integer.getInteger("fixtureJitter", 0);
+  public static final int FIXTURE_LISTINGS = Integer.getInteger("fixtureListings", 0);
+  public static final double FIXTURE_DUPLICATE_RATE =
+      Double.parseDouble(System.getProperty("fixtureDuplicateRate", "0"));
+  public static final long FIXTURE_SEED = Long.getLong("fixtureSeed", 1);
+  public static final String LISTING_SNAPSHOT_FILE = System.getProperty("snapshotFile");
+  public static final int SHARD_COUNT = Integer.getInteger("shards", 1);
+  public static final int SHARD_INDEX = Integer.getInteger("shard", 0);
+  public static final String TEST_DURATIONS_FILE =
+      System.getProperty("testDurations", "test-durations.csv");
+  public static final int DURATION_OUTLIER_MIN_SAMPLES = 5;
+  public static final double DURATION_OUTLIER_DEVIATIONS = 3;
+  public static final double DURATION_OUTLIER_MIN_MARGIN = 0.1;
+  public static final String BLOCKED_RESOURCE_TYPES = System.getProperty("blockResources", "");
+  public static final String BLOCKED_URL_PATTERNS = System.getProperty("blockUrls", "");
+  public static final int PROXY_PORT = Integer.getInteger("proxyPort", 0);
+  public static final String BROWSER_CACHE_DIRECTORY = System.getProperty("browserCache", "");
+  public static final int BROWSER_CACHE_SIZE_MB = Integer.getInteger("browserCacheSize", 0);
 
   // Environment variables
   public static final String BROWSERSTACK_USER_ENVIRONEMNT_VARIABLE =
@@ -37,9 +64,17 @@ public class TestData {
 
   // Timeouts
   public static final int TEN_SECONDS = 10;
+  public static final int TEN_SECONDS_IN_MILLI = 10000;
+  public static final int THIRTY_SECONDS = 30;
   public static final int HALF_SECOND_IN_MILLI = 500;
   public static final int ONE_SECOND_IN_MILLI = 1000;
   public static final int TWENTY_SECOND_WAIT_MILLI = 20000;
+  public static final int POOL_CHECKOUT_TIMEOUT_SECONDS = 300;
+  public static final int WAIT_MIN_INTERVAL_MILLI = 25;
+  public static final int WAIT_MAX_INTERVAL_MILLI = 500;
+  public static final int ANGULAR_STABILITY_CHECK_MILLI = 2000;
+  public static final int HARVEST_SCROLL_TIMEOUT_MILLI = 5000;
+  public static final int PROXY_CONNECT_TIMEOUT_MILLI = 10000;
 
   // Selenium
   public static final String BROWSERSTACK_HUB_URL =
@@ -69,24 +104,238 @@ public class TestData {
   public static final String GECKO_DRIVER_VERSION_CAPABILITY = "browserstack.geckoversion";
   public static final String GECKO_DRIVER_VERSION_VALUE = "0.25.0";
   public static final String GECKO_DRIVER_LOCAL_PATH_PROPERTY = "webdriver.gecko.driver";
+  public static final String FIREFOX_WIDTH_ARGUMENT = "--width=%s";
+  public static final String FIREFOX_HEIGHT_ARGUMENT = "--height=%s";
+  public static final String FIREFOX_DISABLE_HARDWARE_ACCELERATION_PREFERENCE =
+      "layers.acceleration.disabled";
+  public static final String FIREFOX_EXTENSIONS_SCOPES_PREFERENCE = "extensions.enabledScopes";
+  public static final String FIREFOX_IMAGES_PREFERENCE = "permissions.default.image";
+  public static final String FIREFOX_DOWNLOADABLE_FONTS_PREFERENCE =
+      "gfx.downloadable_fonts.enabled";
+  public static final String FIREFOX_PROXY_TYPE_PREFERENCE = "network.proxy.type";
+  public static final String FIREFOX_HTTP_PROXY_PREFERENCE = "network.proxy.http";
+  public static final String FIREFOX_HTTP_PROXY_PORT_PREFERENCE = "network.proxy.http_port";
+  public static final String FIREFOX_SSL_PROXY_PREFERENCE = "network.proxy.ssl";
+  public static final String FIREFOX_SSL_PROXY_PORT_PREFERENCE = "network.proxy.ssl_port";
+  public static final String FIREFOX_NO_PROXIES_ON_PREFERENCE = "network.proxy.no_proxies_on";
+  public static final String FIREFOX_PROXY_LOCALHOST_PREFERENCE =
+      "network.proxy.allow_hijacking_localhost";
+  public static final int FIREFOX_MANUAL_PROXY_TYPE = 1;
+  public static final String FIREFOX_DISK_CACHE_PREFERENCE = "browser.cache.disk.enable";
+  public static final String FIREFOX_DISK_CACHE_DIRECTORY_PREFERENCE =
+      "browser.cache.disk.parent_directory";
+  public static final String FIREFOX_DISK_CACHE_SMART_SIZE_PREFERENCE =
+      "browser.cache.disk.smart_size.enabled";
+  /** In kilobytes. */
+  public static final String FIREFOX_DISK_CACHE_CAPACITY_PREFERENCE = "browser.cache.disk.capacity";
+  public static final int FIREFOX_BLOCK_IMAGES_VALUE = 2;
 
   // ChromeDriver
   public static final String CHROME_DRIVER_VERSION_CAPABILITY = "browserstack.chrome.driver";
   public static final String CHROME_DRIVER_VERSION_VALUE = "77.0.3865.40";
   public static final String CHROME_DRIVER_DRIVER_LOCAL_PATH_PROPERTY = "webdriver.chrome.driver";
+  public static final String CHROME_WINDOW_SIZE_ARGUMENT = "--window-size=%s,%s";
+  public static final String CHROME_DISABLE_GPU_ARGUMENT = "--disable-gpu";
+  public static final String CHROME_DISABLE_EXTENSIONS_ARGUMENT = "--disable-extensions";
+  public static final String CHROME_DISABLE_DEV_SHM_USAGE_ARGUMENT = "--disable-dev-shm-usage";
+  public static final String CHROME_PROXY_SERVER_ARGUMENT = "--proxy-server=http://%s:%s";
+  /** Chrome bypasses the proxy for localhost unless told otherwise, e.g. for the fixture server. */
+  public static final String CHROME_PROXY_LOOPBACK_ARGUMENT = "--proxy-bypass-list=<-loopback>";
+  public static final String CHROME_PREFERENCES_OPTION = "prefs";
+  public static final String CHROME_IMAGES_PREFERENCE =
+      "profile.managed_default_content_settings.images";
+  public static final int CHROME_BLOCK_IMAGES_VALUE = 2;
+  public static final String CHROME_DISK_CACHE_DIRECTORY_ARGUMENT = "--disk-cache-dir=%s";
+  /** In bytes. */
+  public static final String CHROME_DISK_CACHE_SIZE_ARGUMENT = "--disk-cache-size=%s";
 
   // JavaScript
   public static final String WAIT_FOR_PAGE_LOADING = "return document.readyState";
   public static final String COMPLETE_STATE = "complete";
+  /**
+   * Resolves with true once the document is loaded and every Angular application on the page is
+   * stable (no pending macrotasks such as timers or HTTP requests), or right away if the page is
+   * not an Angular application. Resolves with false if the document is still loading or the
+   * applications are not stable after the number of milliseconds passed as the first argument.
+   */
+  public static final String WAIT_FOR_ANGULAR_STABILITY_SCRIPT =
+      "var done = arguments[arguments.length - 1];"
+          + "if (document.readyState !== 'complete') { done(false); return; }"
+          + "if (!window.getAllAngularTestabilities) { done(true); return; }"
+          + "var testabilities = window.getAllAngularTestabilities();"
+          + "var pending = testabilities.length;"
+          + "if (pending === 0) { done(true); return; }"
+          + "var timer = setTimeout(function() { done(false); }, arguments[0]);"
+          + "testabilities.forEach(function(testability) {"
+          + "  testability.whenStable(function() {"
+          + "    if (--pending === 0) { clearTimeout(timer); done(true); }"
+          + "  });"
+          + "});";
+  /**
+   * Resolves as soon as anything in the DOM changes, or with false after the number of milliseconds
+   * passed as the first argument.
+   */
+  public static final String WAIT_FOR_DOM_MUTATION_SCRIPT =
+      "var done = arguments[arguments.length - 1];"
+          + "var observer = new MutationObserver(function() {"
+          + "  observer.disconnect(); clearTimeout(timer); done(true);"
+          + "});"
+          + "var timer = setTimeout(function() {"
+          + "  observer.disconnect(); done(false);"
+          + "}, arguments[0]);"
+          + "observer.observe(document, {childList: true, subtree: true, attributes: true,"
+          + " characterData: true});";
+  /**
+   * Like EXTRACT_ELEMENTS_TEXT_SCRIPT, but only for the items that were not harvested yet, and at
+   * most as many items as the third argument. The key of an item is the value of the XPath in the
+   * fifth argument (the link to the details of the apartment), or a number unique in the page for
+   * an item without one. Each item is marked with the harvest id (fourth argument) and its key, so
+   * an item that gets recycled for another result by the page is harvested again. Each row starts
+   * with the key of the item.
+   */
+  public static final String HARVEST_NEW_ELEMENTS_TEXT_SCRIPT =
+      "var items = document.evaluate(arguments[0], document, null,"
+          + " XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);"
+          + "var rows = [];"
+          + "for (var i = 0; i < items.snapshotLength && rows.length < arguments[2]; i++) {"
+          + "  var item = items.snapshotItem(i);"
+          + "  var marker = item.getAttribute('data-akelius-harvested');"
+          + "  var link = document.evaluate('.' + arguments[4], item, null,"
+          + "      XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;"
+          + "  var key;"
+          + "  if (link !== null) {"
+          + "    key = link.value;"
+          + "  } else if (marker !== null && marker.indexOf(arguments[3] + '|') === 0) {"
+          + "    continue;"
+          + "  } else {"
+          + "    document.akeliusHarvestedCount = (document.akeliusHarvestedCount || 0) + 1;"
+          + "    key = '#' + document.akeliusHarvestedCount;"
+          + "  }"
+          + "  if (marker === arguments[3] + '|' + key) { continue; }"
+          + "  item.setAttribute('data-akelius-harvested', arguments[3] + '|' + key);"
+          + "  rows.push([key].concat(arguments[1].map(function(locator) {"
+          + "    var child = document.evaluate('.' + locator, item, null,"
+          + "        XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;"
+          + "    if (child === null) { return null; }"
+          + "    var text = child.nodeType === Node.ATTRIBUTE_NODE ? child.value : child.innerText;"
+          + "    return text.replace(/\\u00a0/g, ' ');"
+          + "  })));"
+          + "}"
+          + "return rows;";
+  /** Scrolls the last element that matches the XPath in the first argument into view. */
+  public static final String SCROLL_TO_LAST_ELEMENT_SCRIPT =
+      "var items = document.evaluate(arguments[0], document, null,"
+          + " XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);"
+          + "if (items.snapshotLength > 0) {"
+          + "  items.snapshotItem(items.snapshotLength - 1).scrollIntoView(false);"
+          + "}"
+          + "window.scrollTo(0, document.body.scrollHeight);";
+  /** Returns all the items of the storage named in the first argument as a map. */
+  public static final String READ_STORAGE_SCRIPT =
+      "var storage = window[arguments[0]];"
+          + "var items = {};"
+          + "for (var i = 0; i < storage.length; i++) {"
+          + "  items[storage.key(i)] = storage.getItem(storage.key(i));"
+          + "}"
+          + "return items;";
+  /**
+   * Replaces the items of the localStorage and the sessionStorage with the maps in the arguments.
+   */
+  public static final String WRITE_STORAGE_SCRIPT =
+      "[[window.localStorage, arguments[0]], [window.sessionStorage, arguments[1]]]"
+          + ".forEach(function(entry) {"
+          + "  entry[0].clear();"
+          + "  Object.keys(entry[1]).forEach(function(key) {"
+          + "    entry[0].setItem(key, entry[1][key]);"
+          + "  });"
+          + "});";
+  public static final String NAVIGATION_ENTRY_TYPE = "navigation";
+  /**
+   * Returns the Resource Timing entries recorded since the last call and clears them from the
+   * browser buffer, plus the Navigation Timing entry the first time it runs on a document.
+   */
+  public static final String COLLECT_TIMING_ENTRIES_SCRIPT =
+      "var entries = [];"
+          + "if (!window.__akeliusTimingCollected) {"
+          + "  window.__akeliusTimingCollected = true;"
+          + "  performance.setResourceTimingBufferSize(1000);"
+          + "  entries = entries.concat(performance.getEntriesByType('navigation'));"
+          + "}"
+          + "entries = entries.concat(performance.getEntriesByType('resource'));"
+          + "performance.clearResourceTimings();"
+          + "return entries.map(function(e) {"
+          + "  return {name: e.name, entryType: e.entryType, initiatorType: e.initiatorType,"
+          + "      startTime: e.startTime, duration: e.duration, transferSize: e.transferSize || 0,"
+          + "      encodedBodySize: e.encodedBodySize || 0,"
+          + "      decodedBodySize: e.decodedBodySize || 0,"
+          + "      requestStart: e.requestStart, responseStart: e.responseStart,"
+          + "      responseEnd: e.responseEnd,"
+          + "      domContentLoadedEventEnd: e.domContentLoadedEventEnd || 0,"
+          + "      loadEventEnd: e.loadEventEnd || 0};"
+          + "});";
+  /**
+   * Collects the text of some child elements for every element that matches a locator. Takes the
+   * XPath of the items and a list of XPaths relative to each item, and returns one list of texts
+   * per item (null for a child that doesn't exist). An XPath that selects an attribute returns the
+   * value of the attribute.
+   */
+  public static final String EXTRACT_ELEMENTS_TEXT_SCRIPT =
+      "var items = document.evaluate(arguments[0], document, null,"
+          + " XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);"
+          + "var rows = [];"
+          + "for (var i = 0; i < items.snapshotLength; i++) {"
+          + "  var item = items.snapshotItem(i);"
+          + "  rows.push(arguments[1].map(function(locator) {"
+          + "    var child = document.evaluate('.' + locator, item, null,"
+          + "        XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;"
+          + "    if (child === null) { return null; }"
+          + "    var text = child.nodeType === Node.ATTRIBUTE_NODE ? child.value : child.innerText;"
+          + "    return text.replace(/\\u00a0/g, ' ');"
+          + "  }));"
+          + "}"
+          + "return rows;";
+
+  // Performance budgets
+  public static final String PERFORMANCE_BUDGETS_RESOURCE = "performance-budgets.properties";
+  public static final String BUDGET_MODE_FAIL = "fail";
+  public static final String BUDGET_MODE_OFF = "off";
+
+  // Fixture server
+  public static final String LOCALHOST = "localhost";
+  public static final String FIXTURE_LANDING_PAGE_RESOURCE = "fixtures/landing.html";
+  public static final String FIXTURE_DETAIL_PAGE_RESOURCE = "fixtures/detail.html";
+  public static final String FIXTURE_DEFAULT_LOCALE = "de_DE";
+  public static final String SIZE_FROM_PARAMETER = "sizeFrom";
+  public static final String SIZE_TO_PARAMETER = "sizeTo";
+  public static final String RENT_FROM_PARAMETER = "rentFrom";
+  public static final String RENT_TO_PARAMETER = "rentTo";
+  public static final String ROOMS_FROM_PARAMETER = "roomsFrom";
+  public static final String ROOMS_TO_PARAMETER = "roomsTo";
+  public static final String VIEW_PARAMETER = "view";
+  public static final String MAP_VIEW_VALUE = "map";
 
   // Misc
   public static final String PROJECT_VALUE = "Akelius";
   public static final String EN_UK_LOCALE = "en_UK";
+  /** Matches the locale at the start of the path of a URL of the website. */
+  public static final String LOCALE_PATH_REGEX = "^/([a-z]{2}_[A-Z]{2})(?=/|$)";
   public static final String CITY = "Berlin";
   public static final String SLIDER_VALUE_NOW_ATTRIBUTE = "aria-valuenow";
   public static final String TAB_VIEW_SELECTED_ATTRIBUTE = "aria-selected";
-  public static final String APARTMENT_SIZE_SLIDER_PARTIAL_URL = "?sizeFrom=%s&sizeTo=%s";
   public static final String APARTMENT_ID_REGEX = "detail/(.*)";
+  public static final String AVAILABLE_FROM_DATE_PATTERN = "dd.MM.yyyy";
+  /** A light page to load for setting the cookies and storage of an origin. */
+  public static final String CHECKPOINT_ORIGIN_PATH = "/favicon.ico";
+  public static final int REGEX_CACHE_SIZE = 64;
+  public static final int HARVEST_BATCH_SIZE = 50;
+  public static final int PROXY_BUFFER_SIZE = 16384;
+  public static final String IMAGES_RESOURCE_TYPE = "images";
+  public static final String FONTS_RESOURCE_TYPE = "fonts";
+  /**
+   * Chrome has no preference to skip web fonts, so they are blocked by URL on the local proxy,
+   * which only sees the paths of plain HTTP requests.
+   */
+  public static final String[] FONT_URL_PATTERNS = {"*.woff*", "*.ttf*", "*.otf*", "*.eot*"};
   public static final int SLIDER_MIN_VALUE = 40;
   public static final int SLIDER_MAX_VALUE = 96;
   public static final String INVALID_TEXT = "querty";
@@ -100,5 +349,8 @@ public class TestData {
       "phone is in invalid format";
 
   // URLs
-  public static final String LANDING_PAGE = "https://rent.akelius.com/";
+  public static final String LANDING_PAGE =
+      USE_FIXTURE_SERVER
+          ? String.format("http://%s:%s/", LOCALHOST, FIXTURE_SERVER_PORT)
+          : "https://rent.akelius.com/";
 }
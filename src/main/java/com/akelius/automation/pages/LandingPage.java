@@ -12,11 +12,12 @@
  */
 package com.akelius.automation.pages;
 
+import java.net.URI;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -26,9 +27,11 @@ import org.openqa.selenium.support.FindBy;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 
 import com.akelius.automation.components.ApartmentSearchResultComponent;
+import com.akelius.automation.components.ApartmentSearchResultHarvester;
 import com.akelius.automation.components.ChooseLanguageComponent;
 import com.akelius.automation.core.PageObject;
 import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.ApartmentDuplicateIndex;
 import com.akelius.automation.data.TestData;
 import com.akelius.automation.util.Helper;
 
@@ -45,11 +48,19 @@ public class LandingPage extends PageObject {
   @FindBy(xpath = "//button[@aria-label='Language']")
   private WebElement changeLanguageButton;
 
+  @FindBy(xpath = "/html")
+  private WebElement documentElement;
+
   @FindBy(id = "mat-select-1")
   private WebElement cityDropDown;
 
-  @FindBy(xpath = "//span[@class='mat-option-text']")
-  private List<WebElement> dropDownOptions;
+  /** Resolved with the lower-case name of the city, see {@link #selectCity(String)}. */
+  @FindBy(
+      xpath =
+          "//span[@class='mat-option-text']"
+              + "[translate(normalize-space(.), 'ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÜ', "
+              + "'abcdefghijklmnopqrstuvwxyzäöü')='%s']")
+  private WebElement cityOption;
 
   @FindBy(xpath = "//span[contains(@class,'slider-pointer-min')]")
   private WebElement minSizeSlider;
@@ -73,7 +84,9 @@ public class LandingPage extends PageObject {
   private WebElement mapElement;
 
   /**
-   * Changes the language of the website to use En_UK
+   * Changes the language of the website to use En_UK through the language dialog and the world
+   * map. Slow, only use it to test the dialog itself, otherwise use {@link
+   * #changeLanguage(String)}.
    *
    * @return An object of the LandingPage
    */
@@ -87,6 +100,82 @@ public class LandingPage extends PageObject {
     return new LandingPage();
   }
 
+  /**
+   * Changes the language of the website by loading the current page under the URL of the locale,
+   * without going through the language dialog. The page is verified with {@link
+   * #isDisplayedIn(String)}.
+   *
+   * @param locale The locale to switch to, e.g. {@link TestData#EN_UK_LOCALE}.
+   * @return An object of the LandingPage in the new locale
+   */
+  public LandingPage changeLanguage(String locale) {
+    return changeLanguage(locale, page -> page.isDisplayedIn(locale));
+  }
+
+  /**
+   * Changes the language of the website by loading the current page under the URL of the locale.
+   * If the verification fails afterwards, e.g. because the website ignored the locale of the URL,
+   * it falls back to the language dialog, which only supports En_UK.
+   *
+   * @param locale The locale to switch to, e.g. {@link TestData#EN_UK_LOCALE}.
+   * @param verification Checks that the page is displayed in the locale.
+   * @return An object of the LandingPage in the new locale
+   */
+  public LandingPage changeLanguage(String locale, Predicate<LandingPage> verification) {
+    logger.info(String.format("Opening the page in the locale '%s'...", locale));
+    driver.navigate().to(getLocaleUrl(driver.getCurrentUrl(), locale));
+    LandingPage landingPage = new LandingPage();
+    if (verification.test(landingPage)) {
+      return landingPage;
+    }
+
+    if (!TestData.EN_UK_LOCALE.equals(locale)) {
+      throw new RuntimeException(
+          String.format("Failed to change the language to '%s' through its URL.", locale));
+    }
+    logger.info("The locale of the URL was not applied, using the language dialog instead...");
+    landingPage.changeLanguageToEnUk();
+    wait.until(ExpectedConditions.urlContains(locale));
+    return new LandingPage();
+  }
+
+  /**
+   * @param locale The locale to check, e.g. {@link TestData#EN_UK_LOCALE}.
+   * @return True if the current URL is in the locale, whether or not the website applied it
+   */
+  public boolean isLocale(String locale) {
+    String path = URI.create(driver.getCurrentUrl()).getPath();
+    return locale.equals(Helper.extractGroupFromRegex(TestData.LOCALE_PATH_REGEX, path));
+  }
+
+  /**
+   * @param locale The locale to check, e.g. {@link TestData#EN_UK_LOCALE}.
+   * @return True if the language the page declares in its lang attribute is the one of the locale
+   */
+  public boolean isDisplayedIn(String locale) {
+    String language = locale.split("_")[0];
+    String lang = documentElement.getAttribute("lang");
+    return lang != null && lang.toLowerCase(Locale.ROOT).split("[-_]")[0].equals(language);
+  }
+
+  /**
+   * @param url The URL of a page of the website.
+   * @param locale The locale to use.
+   * @return The same URL with the locale replaced, or added if it has none
+   */
+  public static String getLocaleUrl(String url, String locale) {
+    URI uri = URI.create(url);
+    String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+    path = path.replaceFirst(TestData.LOCALE_PATH_REGEX, "");
+    return String.format(
+        "%s://%s/%s%s%s",
+        uri.getScheme(),
+        uri.getRawAuthority(),
+        locale,
+        path.isEmpty() ? "/" : path,
+        uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+  }
+
   /**
    * Selects a city from the city DropDown and returns an instance to the current class for
    * chaining.
@@ -97,33 +186,47 @@ public class LandingPage extends PageObject {
   public LandingPage selectCity(String cityName) {
     cityDropDown.click();
 
-    /** Cycle through all the DropDown options and click on the one with the text. */
-    dropDownOptions
-        .stream()
-        .filter(it -> it.getText().trim().equalsIgnoreCase(cityName))
-        .collect(Collectors.toList())
-        .get(0)
+    /** Let the browser find the option by its text instead of reading the text of every option. */
+    String optionText = cityName.trim().toLowerCase(Locale.ROOT);
+    wait.until(
+            "city option '" + cityName + "' to be displayed",
+            d -> {
+              WebElement option = findElement(LandingPage.class, "cityOption", optionText);
+              return option.isDisplayed() ? option : null;
+            })
         .click();
 
     return this;
   }
 
   /**
-   * Filters the apartments by minimum and maximum apartment size.
+   * @param cityName The city to check, as displayed in the city drop down.
+   * @return True if the city drop down shows the city as the selected one
+   */
+  public boolean isCitySelected(String cityName) {
+    return cityDropDown
+        .getText()
+        .trim()
+        .toLowerCase(Locale.ROOT)
+        .equals(cityName.trim().toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * Filters the apartments by minimum and maximum apartment size. The other filters of the current
+   * page are kept, and the size replaces the previous one if there was any.
    *
-   * @param min
-   * @param max
-   * @return
+   * @param min The minimum size in square meters.
+   * @param max The maximum size in square meters.
+   * @return An instance to the current class.
    */
   public LandingPage selectSize(int min, int max) {
     driver
         .navigate()
-        .to(
-            driver.getCurrentUrl()
-                + String.format(TestData.APARTMENT_SIZE_SLIDER_PARTIAL_URL, min, max));
+        .to(LandingPageQuery.fromUrl(driver.getCurrentUrl()).size(min, max).toUrl());
 
     // wait until the page reloads
-    Helper.waitForPageLoadingToComplete();
+    Helper.waitForAngularToBeStable();
+    wait.until(ExpectedConditions.visibilityOf(minSizeSlider));
 
     return this;
   }
@@ -156,21 +259,90 @@ public class LandingPage extends PageObject {
   }
 
   /**
-   * Checks whether the displayed apartment search results don't contain any duplicates by creating
-   * a HashMap and storing the hash for each apartment as key.
+   * Extracts the data of all the apartment search results in one go. Much faster than calling
+   * {@link ApartmentSearchResultComponent#getApartmentObject()} for each search result.
+   *
+   * @return A list of the data of all the apartment search results
+   */
+  public List<Apartment> getAllApartmentObjects() {
+    return ApartmentSearchResultComponent.getAllApartmentObjects(
+        driver, APARTMENT_SEARCH_ITEM_BASE_LOCATOR);
+  }
+
+  /**
+   * Streams all the apartment search results, scrolling through the result list to harvest the
+   * cards in batches as they get rendered. Unlike {@link #getAllApartmentObjects()}, it also works
+   * for lists that only render part of the results, and the first results are available before
+   * the whole list was read.
+   *
+   * @return A lazy stream of the apartments, it stops once {@link #getApartmentCount()} apartments
+   *     were returned or no more cards get rendered
+   */
+  public Stream<Apartment> streamApartments() {
+    return streamApartments(null);
+  }
+
+  /**
+   * Streams all the apartment search results like {@link #streamApartments()}, and adds each
+   * apartment to the duplicate index as soon as its card is harvested, so the duplicates are found
+   * without keeping the apartments.
+   *
+   * @param duplicateIndex The index to add the apartments to, null to skip the duplicate check.
+   * @return A lazy stream of the apartments
+   */
+  public Stream<Apartment> streamApartments(ApartmentDuplicateIndex duplicateIndex) {
+    return new ApartmentSearchResultHarvester(
+            driver, APARTMENT_SEARCH_ITEM_BASE_LOCATOR, getApartmentCount(), duplicateIndex)
+        .stream();
+  }
+
+  /**
+   * Checks whether the displayed apartment search results don't contain any duplicates, comparing
+   * all the fields of the apartments while they are harvested. The duplicates found are logged
+   * with their positions.
    *
    * @return True if the values are unique, otherwise false
    */
   public boolean areApartmentValuesUnique() {
-    Map<Integer, Apartment> distinctValues = new HashMap<>();
-    List<ApartmentSearchResultComponent> apartments = getAllApartments();
+    ApartmentDuplicateIndex duplicateIndex = new ApartmentDuplicateIndex();
+    streamApartments(duplicateIndex).forEach(apartment -> {});
+    return areApartmentValuesUnique(duplicateIndex);
+  }
+
+  /**
+   * Checks whether a list of apartments doesn't contain any duplicates, comparing all the fields of
+   * the apartments.
+   *
+   * @param apartments The apartments to check.
+   * @return True if the values are unique, otherwise false
+   */
+  public static boolean areApartmentValuesUnique(List<Apartment> apartments) {
+    return areApartmentValuesUnique(indexApartments(apartments));
+  }
 
-    for (ApartmentSearchResultComponent apartmentComponent : apartments) {
-      Apartment apartmentDataObject = apartmentComponent.getApartmentObject();
-      distinctValues.put(apartmentDataObject.hashCode(), apartmentDataObject);
+  /**
+   * Checks whether an index of apartments, e.g. filled by {@link
+   * #streamApartments(ApartmentDuplicateIndex)}, doesn't contain any duplicates. The duplicates
+   * found are logged with their positions.
+   *
+   * @param duplicateIndex The index of the apartments to check.
+   * @return True if the values are unique, otherwise false
+   */
+  public static boolean areApartmentValuesUnique(ApartmentDuplicateIndex duplicateIndex) {
+    if (!duplicateIndex.isUnique()) {
+      logger.info("Duplicate apartment search results: " + duplicateIndex.getReport());
     }
+    return duplicateIndex.isUnique();
+  }
 
-    return distinctValues.size() < apartments.size() ? false : true;
+  /**
+   * @param apartments The apartments to index, in the order they are displayed.
+   * @return An index of the apartments with the groups of duplicates and their positions
+   */
+  public static ApartmentDuplicateIndex indexApartments(Iterable<Apartment> apartments) {
+    ApartmentDuplicateIndex duplicateIndex = new ApartmentDuplicateIndex();
+    apartments.forEach(duplicateIndex::add);
+    return duplicateIndex;
   }
 
   /**
@@ -182,12 +354,16 @@ public class LandingPage extends PageObject {
     if (Boolean.parseBoolean(listViewLink.getAttribute(TestData.TAB_VIEW_SELECTED_ATTRIBUTE))) {
       // switch to map view
       mapViewLink.click();
-      Helper.waitForPageLoadingToComplete();
+      Helper.waitForAngularToBeStable();
+      wait.until(ExpectedConditions.visibilityOf(mapElement));
       return new LandingPage();
     } else {
       // switch to list view
       listViewLink.click();
-      Helper.waitForPageLoadingToComplete();
+      Helper.waitForAngularToBeStable();
+      wait.until(
+          ExpectedConditions.attributeToBe(
+              listViewLink, TestData.TAB_VIEW_SELECTED_ATTRIBUTE, TestData.TRUE_VALUE));
       return new LandingPage();
     }
   }
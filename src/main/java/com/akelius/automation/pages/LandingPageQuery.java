@@ -0,0 +1,289 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.pages;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.akelius.automation.core.DriverManager;
+import com.akelius.automation.data.TestData;
+import com.akelius.automation.util.Helper;
+
+/**
+ * The filters of the apartment search as one canonical URL of the landing page, so any
+ * combination of locale, city, size, rent, rooms and view loads with a single navigation instead
+ * of going through the filter controls one by one. The parameters are always written in the same
+ * order and the default values are left out, so equal filters give equal URLs.
+ *
+ * <p>The format of the URL, with the city as a path segment after the locale (e.g. {@code
+ * /en_UK/berlin?sizeFrom=40}) and the filters as parameters, is the one of the fixture server. The
+ * live website may read its deep links differently, so {@link #open()} checks that the city was
+ * applied and selects it through the city drop down otherwise, and a query read from the URL of a
+ * page keeps the path of that URL exactly as it is and only rewrites its parameters.
+ *
+ * <pre>
+ * LandingPage landingPage =
+ *     new LandingPageQuery().locale(TestData.EN_UK_LOCALE).city("Berlin").size(40, 96).open();
+ * </pre>
+ */
+public class LandingPageQuery {
+
+  protected static final Logger logger = LogManager.getLogger(LandingPageQuery.class);
+
+  public enum View {
+    LIST,
+    MAP
+  }
+
+  private static final List<String> KNOWN_PARAMETERS =
+      Arrays.asList(
+          TestData.SIZE_FROM_PARAMETER,
+          TestData.SIZE_TO_PARAMETER,
+          TestData.RENT_FROM_PARAMETER,
+          TestData.RENT_TO_PARAMETER,
+          TestData.ROOMS_FROM_PARAMETER,
+          TestData.ROOMS_TO_PARAMETER,
+          TestData.VIEW_PARAMETER);
+
+  private String locale;
+  private String city;
+  // the origin and the raw path after the locale of the URL the query was read from, written back
+  // unchanged
+  private String origin;
+  private String path;
+  private Integer sizeFrom;
+  private Integer sizeTo;
+  private Integer rentFrom;
+  private Integer rentTo;
+  private Integer roomsFrom;
+  private Integer roomsTo;
+  private View view = View.LIST;
+  // parameters the query has no filter for, written back unchanged after the known ones
+  private final Map<String, String> otherParameters = new LinkedHashMap<>();
+
+  /**
+   * Reads the filters of a URL of the landing page, e.g. to change one filter of the current page
+   * and keep the others. The path after the locale is kept as it is, whatever the city or the
+   * other segments it holds, unless {@link #city(String)} replaces it, and unknown parameters are
+   * kept in their order and written back unchanged.
+   *
+   * @param url The URL of a landing page.
+   * @return The query of the URL
+   */
+  public static LandingPageQuery fromUrl(String url) {
+    URI uri = URI.create(url);
+    LandingPageQuery query = new LandingPageQuery();
+
+    String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+    query.locale = Helper.extractGroupFromRegex(TestData.LOCALE_PATH_REGEX, path);
+    query.origin = uri.getScheme() + "://" + uri.getRawAuthority();
+    query.path = path.replaceFirst(TestData.LOCALE_PATH_REGEX, "");
+
+    Map<String, String> parameters = new LinkedHashMap<>();
+    if (uri.getRawQuery() != null) {
+      for (String pair : uri.getRawQuery().split("&")) {
+        int separator = pair.indexOf('=');
+        if (separator > 0) {
+          parameters.put(
+              decode(pair.substring(0, separator)), decode(pair.substring(separator + 1)));
+        } else if (separator < 0 && !pair.isEmpty()) {
+          parameters.put(decode(pair), null);
+        }
+      }
+    }
+    query.sizeFrom = getInteger(parameters, TestData.SIZE_FROM_PARAMETER);
+    query.sizeTo = getInteger(parameters, TestData.SIZE_TO_PARAMETER);
+    query.rentFrom = getInteger(parameters, TestData.RENT_FROM_PARAMETER);
+    query.rentTo = getInteger(parameters, TestData.RENT_TO_PARAMETER);
+    query.roomsFrom = getInteger(parameters, TestData.ROOMS_FROM_PARAMETER);
+    query.roomsTo = getInteger(parameters, TestData.ROOMS_TO_PARAMETER);
+    if (TestData.MAP_VIEW_VALUE.equalsIgnoreCase(parameters.get(TestData.VIEW_PARAMETER))) {
+      query.view = View.MAP;
+    }
+    parameters.keySet().removeAll(KNOWN_PARAMETERS);
+    query.otherParameters.putAll(parameters);
+    return query;
+  }
+
+  /** @param locale The locale, e.g. {@link TestData#EN_UK_LOCALE}, null for the default one. */
+  public LandingPageQuery locale(String locale) {
+    this.locale = locale;
+    return this;
+  }
+
+  /**
+   * @param city The city to search in, as displayed in the city drop down. Replaces the path of
+   *     the URL the query was read from, if any.
+   */
+  public LandingPageQuery city(String city) {
+    this.city = city;
+    this.path = null;
+    return this;
+  }
+
+  /** Filters the apartments by size in square meters, both ends included. */
+  public LandingPageQuery size(int min, int max) {
+    checkRange("size", min, max);
+    sizeFrom = min;
+    sizeTo = max;
+    return this;
+  }
+
+  /** Filters the apartments by rent in euros, both ends included. */
+  public LandingPageQuery rent(int min, int max) {
+    checkRange("rent", min, max);
+    rentFrom = min;
+    rentTo = max;
+    return this;
+  }
+
+  /** Filters the apartments by number of rooms, both ends included. */
+  public LandingPageQuery rooms(int min, int max) {
+    checkRange("rooms", min, max);
+    roomsFrom = min;
+    roomsTo = max;
+    return this;
+  }
+
+  /** @param view Whether to show the results as a list (the default) or on the map. */
+  public LandingPageQuery view(View view) {
+    this.view = view;
+    return this;
+  }
+
+  /** @return The canonical URL of the landing page with the filters. */
+  public String toUrl() {
+    URI landingPage = URI.create(TestData.LANDING_PAGE);
+    StringBuilder url =
+        new StringBuilder(
+            origin != null
+                ? origin
+                : landingPage.getScheme() + "://" + landingPage.getRawAuthority());
+    if (path != null) {
+      if (locale != null) {
+        url.append('/').append(locale);
+      }
+      url.append(path.isEmpty() && locale == null ? "/" : path);
+    } else {
+      url.append('/');
+      if (locale != null) {
+        url.append(locale).append('/');
+      }
+      if (city != null) {
+        url.append(encode(city.toLowerCase(Locale.ROOT)));
+      }
+    }
+
+    Map<String, Object> parameters = new LinkedHashMap<>();
+    parameters.put(TestData.SIZE_FROM_PARAMETER, sizeFrom);
+    parameters.put(TestData.SIZE_TO_PARAMETER, sizeTo);
+    parameters.put(TestData.RENT_FROM_PARAMETER, rentFrom);
+    parameters.put(TestData.RENT_TO_PARAMETER, rentTo);
+    parameters.put(TestData.ROOMS_FROM_PARAMETER, roomsFrom);
+    parameters.put(TestData.ROOMS_TO_PARAMETER, roomsTo);
+    parameters.put(TestData.VIEW_PARAMETER, view == View.MAP ? TestData.MAP_VIEW_VALUE : null);
+    String queryString =
+        Stream.concat(
+                parameters
+                    .entrySet()
+                    .stream()
+                    .filter(parameter -> parameter.getValue() != null)
+                    .map(
+                        parameter ->
+                            parameter.getKey() + "=" + encode(parameter.getValue().toString())),
+                otherParameters
+                    .entrySet()
+                    .stream()
+                    .map(
+                        parameter ->
+                            parameter.getValue() == null
+                                ? encode(parameter.getKey())
+                                : encode(parameter.getKey()) + "=" + encode(parameter.getValue())))
+            .collect(Collectors.joining("&"));
+    if (!queryString.isEmpty()) {
+      url.append('?').append(queryString);
+    }
+    return url.toString();
+  }
+
+  /**
+   * Loads the landing page with all the filters in one navigation. If the website didn't apply the
+   * city of the URL, the city is selected through the city drop down and the size filter, if any,
+   * applied again on top of it.
+   *
+   * @return An object of the LandingPage
+   */
+  public LandingPage open() {
+    DriverManager.getDriver().navigate().to(toUrl());
+    LandingPage landingPage = new LandingPage();
+    if (city != null && !landingPage.isCitySelected(city)) {
+      logger.info(
+          String.format(
+              "The city '%s' of the deep link was not applied, selecting it instead...", city));
+      landingPage.selectCity(city);
+      if (sizeFrom != null) {
+        landingPage.selectSize(sizeFrom, sizeTo);
+      }
+    }
+    return landingPage;
+  }
+
+  @Override
+  public String toString() {
+    return toUrl();
+  }
+
+  private static void checkRange(String filter, int min, int max) {
+    if (min > max) {
+      throw new IllegalArgumentException(
+          String.format("The minimum %s %s is greater than the maximum %s.", filter, min, max));
+    }
+  }
+
+  private static Integer getInteger(Map<String, String> parameters, String name) {
+    try {
+      return parameters.containsKey(name) ? Integer.valueOf(parameters.get(name)) : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, StandardCharsets.UTF_8.name()).replace("+", "%20");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.TestData;
+
+/** The apartments served by the fixture server when nothing else is configured. */
+public class FixtureData {
+
+  private static final String[] STREETS = {
+    "Kastanienallee", "Schönhauser Allee", "Sonnenallee", "Karl-Marx-Straße", "Müllerstraße"
+  };
+
+  /** Private constructor, so no one can instantiate an object of this class. */
+  private FixtureData() {}
+
+  /**
+   * The apartments to serve according to the command line configs. When a number of synthetic
+   * listings is requested, Berlin gets that many generated listings instead of the fixed ones.
+   *
+   * @return The apartments of each city, keyed by city name.
+   */
+  public static Map<String, List<Apartment>> getApartments() {
+    Map<String, List<Apartment>> apartments = getDefaultApartments();
+
+    if (TestData.FIXTURE_LISTINGS > 0) {
+      apartments.put(
+          "Berlin",
+          new SyntheticListings()
+              .seed(TestData.FIXTURE_SEED)
+              .duplicateRate(TestData.FIXTURE_DUPLICATE_RATE)
+              .generate(TestData.FIXTURE_LISTINGS));
+    }
+    return apartments;
+  }
+
+  /**
+   * A fixed set of apartments, so every run sees the same listings. Berlin, the city the suite
+   * filters on, comes first and has enough apartments both inside and outside the size filter.
+   *
+   * @return The apartments of each city, keyed by city name.
+   */
+  public static Map<String, List<Apartment>> getDefaultApartments() {
+    Map<String, List<Apartment>> apartments = new LinkedHashMap<>();
+    apartments.put("Berlin", createApartments("Berlin", "10115", 24));
+    apartments.put("Hamburg", createApartments("Hamburg", "20095", 8));
+    apartments.put("München", createApartments("München", "80331", 6));
+    return apartments;
+  }
+
+  private static List<Apartment> createApartments(String city, String postalCode, int count) {
+    List<Apartment> apartments = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      int rooms = 1 + i % 4;
+      apartments.add(
+          new Apartment(
+              String.format("%s-room apartment in %s #%s", rooms, city, i + 1),
+              String.format("%s %s\n%s %s", STREETS[i % STREETS.length], i + 1, postalCode, city),
+              String.valueOf(rooms),
+              30 + (i * 7) % 90,
+              String.format("%s. floor", i % 6),
+              600 + (i * 137) % 1400,
+              String.format("%02d.%02d.2020", 1 + i % 28, 1 + i % 12)));
+    }
+    return apartments;
+  }
+}
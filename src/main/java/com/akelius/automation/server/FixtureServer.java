@@ -0,0 +1,388 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.CompactApartment;
+import com.akelius.automation.data.TestData;
+import com.akelius.automation.util.Helper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embedded HTTP server that stands in for rent.akelius.com. It serves fixture versions of the
+ * landing page, the apartment detail page and the contact dialog with the same DOM structure the
+ * page objects target, so the suite can run offline and with a predictable latency.
+ *
+ * <p>URLs follow the pattern {@code
+ * /[locale]/[city]?sizeFrom=..&sizeTo=..&rentFrom=..&rentTo=..&roomsFrom=..&roomsTo=..&view=..}
+ * for the landing page and {@code /[locale]/detail/[id]} for the detail page, where the locale, the
+ * city and every parameter are optional. The landing page is streamed in chunks without a length,
+ * like the one of the live website, and the other responses are sent with their length.
+ */
+public class FixtureServer {
+
+  protected static final Logger logger = LogManager.getLogger(FixtureServer.class);
+
+  private static final Pattern PATH_PATTERN =
+      Pattern.compile("^/(?:([a-z]{2}_[A-Z]{2})(?:/|$))?(?:detail/([^/]+)|([^/]*))/?$");
+  private static final String CARD_TEMPLATE =
+      "<app-unit-item>"
+          + "<a href=\"/%s/detail/%s\"><h3>%s</h3></a>"
+          + "<div class=\"address\">%s</div>"
+          + "<div class=\"group\"><div>rooms %s</div><div>%s m²</div></div>"
+          + "<div class=\"group ng-star-inserted\"><div>%s</div><div>€ %s</div></div>"
+          + "<div class=\"group available-from\">available from %s</div>"
+          + "</app-unit-item>";
+  private static final String OPTION_TEMPLATE = "<span class=\"mat-option-text\">%s</span>";
+
+  private final Map<String, List<Apartment>> apartmentsByCity;
+  private final int latencyMillis;
+  private final int jitterMillis;
+  private final Random random = new Random();
+  private final String landingTemplate = readResource(TestData.FIXTURE_LANDING_PAGE_RESOURCE);
+  private final String detailTemplate = readResource(TestData.FIXTURE_DETAIL_PAGE_RESOURCE);
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /**
+   * @param apartmentsByCity The apartments to serve for each city, the first city is the default.
+   * @param latencyMillis The delay added to every response in milliseconds.
+   * @param jitterMillis The maximum random delay added on top of the latency in milliseconds.
+   */
+  public FixtureServer(
+      Map<String, List<Apartment>> apartmentsByCity, int latencyMillis, int jitterMillis) {
+    if (apartmentsByCity.isEmpty()) {
+      throw new IllegalArgumentException("The fixture server needs at least one city.");
+    }
+    this.apartmentsByCity = new LinkedHashMap<>(apartmentsByCity);
+    this.latencyMillis = latencyMillis;
+    this.jitterMillis = jitterMillis;
+  }
+
+  /**
+   * Starts the server on the given port, use 0 to pick any free port.
+   *
+   * @param port The port to listen on.
+   * @return The URL of the landing page.
+   */
+  public synchronized String start(int port) {
+    try {
+      server = HttpServer.create(new InetSocketAddress(TestData.LOCALHOST, port), 0);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to start the fixture server. Exception = " + e);
+    }
+
+    // one thread per request, so parallel browser sessions don't queue behind the latency
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+
+    logger.info("Fixture server started on " + getUrl());
+    return getUrl();
+  }
+
+  /** Stops the server right away. */
+  public synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+      server = null;
+      logger.info("Fixture server stopped.");
+    }
+  }
+
+  /** @return The URL of the landing page. */
+  public String getUrl() {
+    return String.format("http://%s:%s/", TestData.LOCALHOST, server.getAddress().getPort());
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      delay();
+
+      Matcher matcher = PATH_PATTERN.matcher(exchange.getRequestURI().getPath());
+      if (!matcher.matches()) {
+        respond(exchange, 404, "Not found");
+        return;
+      }
+
+      String locale = matcher.group(1) == null ? TestData.FIXTURE_DEFAULT_LOCALE : matcher.group(1);
+      if (matcher.group(2) != null) {
+        renderDetailPage(exchange, locale, matcher.group(2));
+      } else {
+        renderLandingPage(exchange, locale, matcher.group(3));
+      }
+    } catch (RuntimeException e) {
+      logger.info("The fixture server failed to handle a request. Exception = " + e);
+      respond(exchange, 500, "Internal server error");
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void renderLandingPage(HttpExchange exchange, String locale, String cityPath)
+      throws IOException {
+    String city = findCity(cityPath);
+    if (city == null) {
+      respond(exchange, 404, "Unknown city");
+      return;
+    }
+
+    Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+    List<Apartment> apartments = apartmentsByCity.get(city);
+    int sizeFrom =
+        getIntParameter(
+            query,
+            TestData.SIZE_FROM_PARAMETER,
+            apartments.stream().mapToInt(Apartment::getSize).min().orElse(0));
+    int sizeTo =
+        getIntParameter(
+            query,
+            TestData.SIZE_TO_PARAMETER,
+            apartments.stream().mapToInt(Apartment::getSize).max().orElse(0));
+    int rentFrom = getIntParameter(query, TestData.RENT_FROM_PARAMETER, Integer.MIN_VALUE);
+    int rentTo = getIntParameter(query, TestData.RENT_TO_PARAMETER, Integer.MAX_VALUE);
+    boolean filterRooms =
+        query.containsKey(TestData.ROOMS_FROM_PARAMETER)
+            || query.containsKey(TestData.ROOMS_TO_PARAMETER);
+    int roomsFrom = getIntParameter(query, TestData.ROOMS_FROM_PARAMETER, Integer.MIN_VALUE);
+    int roomsTo = getIntParameter(query, TestData.ROOMS_TO_PARAMETER, Integer.MAX_VALUE);
+
+    StringBuilder cards = new StringBuilder();
+    int count = 0;
+    for (int i = 0; i < apartments.size(); i++) {
+      Apartment apartment = apartments.get(i);
+      float rooms = CompactApartment.parseRooms(apartment.getRooms());
+      if (apartment.getSize() >= sizeFrom
+          && apartment.getSize() <= sizeTo
+          && apartment.getRent() >= rentFrom
+          && apartment.getRent() <= rentTo
+          // NaN fails both comparisons, so apartments with unknown rooms only match without filter
+          && (!filterRooms || (rooms >= roomsFrom && rooms <= roomsTo))) {
+        cards.append(renderCard(locale, getApartmentId(city, i), apartment));
+        count++;
+      }
+    }
+
+    Map<String, String> values = new HashMap<>();
+    values.put("language", locale.substring(0, 2));
+    values.put("locale", locale);
+    values.put("city", escape(city));
+    values.put(
+        "cityOptions",
+        apartmentsByCity
+            .keySet()
+            .stream()
+            .map(it -> String.format(OPTION_TEMPLATE, escape(it)))
+            .collect(Collectors.joining()));
+    values.put("sizeFrom", String.valueOf(sizeFrom));
+    values.put("sizeTo", String.valueOf(sizeTo));
+    values.put("count", String.valueOf(count));
+    values.put("view", escape(query.getOrDefault(TestData.VIEW_PARAMETER, "list")));
+    values.put("cards", cards.toString());
+    respond(exchange, 200, fillTemplate(landingTemplate, values), true);
+  }
+
+  private void renderDetailPage(HttpExchange exchange, String locale, String id)
+      throws IOException {
+    Apartment apartment = findApartment(id);
+    if (apartment == null) {
+      respond(exchange, 404, "Unknown apartment");
+      return;
+    }
+
+    Map<String, String> values = new HashMap<>();
+    values.put("language", locale.substring(0, 2));
+    values.put("title", escape(apartment.getTitle()));
+    values.put("id", escape(id));
+    values.put("address", escape(apartment.getAddress()));
+    respond(exchange, 200, fillTemplate(detailTemplate, values));
+  }
+
+  private String renderCard(String locale, String id, Apartment apartment) {
+    return String.format(
+        CARD_TEMPLATE,
+        locale,
+        id,
+        escape(apartment.getTitle()),
+        // the address is displayed on several lines, the card parser joins them with a space
+        escape(apartment.getAddress()).replace("\n", "<br>"),
+        escape(apartment.getRooms()),
+        apartment.getSize(),
+        escape(apartment.getFloor()),
+        String.format(Locale.GERMANY, "%,d", apartment.getRent()),
+        escape(apartment.getAvailableFrom()));
+  }
+
+  /** Apartment ids are made of the position of the city and the position of the apartment. */
+  private String getApartmentId(String city, int index) {
+    int cityIndex = new ArrayList<>(apartmentsByCity.keySet()).indexOf(city);
+    return String.format("%s-%s", cityIndex + 1, index + 1);
+  }
+
+  private Apartment findApartment(String id) {
+    String[] parts = Helper.extractGroupsFromRegex("^(\\d+)-(\\d+)$", id, 1, 2);
+    if (parts == null) {
+      return null;
+    }
+
+    List<List<Apartment>> cities = new ArrayList<>(apartmentsByCity.values());
+    int cityIndex = Integer.parseInt(parts[0]) - 1;
+    int index = Integer.parseInt(parts[1]) - 1;
+    if (cityIndex >= cities.size() || index < 0 || index >= cities.get(cityIndex).size()) {
+      return null;
+    }
+    return cities.get(cityIndex).get(index);
+  }
+
+  /** @return The city that matches the path, the default city for an empty path. */
+  private String findCity(String cityPath) {
+    if (cityPath == null || cityPath.isEmpty()) {
+      return apartmentsByCity.keySet().iterator().next();
+    }
+
+    return apartmentsByCity
+        .keySet()
+        .stream()
+        .filter(it -> it.equalsIgnoreCase(decode(cityPath)))
+        .findFirst()
+        .orElse(null);
+  }
+
+  /** Sleeps for the configured latency plus a random jitter. */
+  private void delay() {
+    int jitter = jitterMillis > 0 ? random.nextInt(jitterMillis + 1) : 0;
+    if (latencyMillis + jitter > 0) {
+      Helper.sleep(latencyMillis + jitter);
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    respond(exchange, status, body, false);
+  }
+
+  /** @param chunked True to send the body in chunks, without declaring its length up front. */
+  private static void respond(HttpExchange exchange, int status, String body, boolean chunked)
+      throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+    // a length of 0 makes the server use the chunked transfer encoding
+    exchange.sendResponseHeaders(status, chunked ? 0 : bytes.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(bytes);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery) {
+    Map<String, String> query = new HashMap<>();
+    if (rawQuery == null) {
+      return query;
+    }
+
+    for (String pair : rawQuery.split("&")) {
+      int separator = pair.indexOf('=');
+      if (separator > 0) {
+        query.put(decode(pair.substring(0, separator)), decode(pair.substring(separator + 1)));
+      }
+    }
+    return query;
+  }
+
+  private static int getIntParameter(Map<String, String> query, String name, int defaultValue) {
+    try {
+      return query.containsKey(name) ? Integer.parseInt(query.get(name)) : defaultValue;
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String fillTemplate(String template, Map<String, String> values) {
+    String result = template;
+    for (Map.Entry<String, String> value : values.entrySet()) {
+      result = result.replace("${" + value.getKey() + "}", value.getValue());
+    }
+    return result;
+  }
+
+  private static String escape(String value) {
+    return value
+        .replace("&", "&amp;")
+        .replace("<", "&lt;")
+        .replace(">", "&gt;")
+        .replace("\"", "&quot;")
+        .replace("'", "&#39;");
+  }
+
+  private static String readResource(String name) {
+    try (InputStream input = FixtureServer.class.getClassLoader().getResourceAsStream(name)) {
+      if (input == null) {
+        throw new RuntimeException("Failed to find the fixture resource [" + name + "].");
+      }
+
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+        output.write(buffer, 0, read);
+      }
+      return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read the fixture resource. Exception = " + e);
+    }
+  }
+
+  /**
+   * Starts the server with the default fixtures, so it can also be used outside of the test suite.
+   * The port, latency and jitter are read from the same command line configs as the suite uses.
+   */
+  public static void main(String[] args) {
+    new FixtureServer(
+            FixtureData.getApartments(),
+            TestData.FIXTURE_SERVER_LATENCY_MILLI,
+            TestData.FIXTURE_SERVER_JITTER_MILLI)
+        .start(TestData.FIXTURE_SERVER_PORT);
+  }
+}
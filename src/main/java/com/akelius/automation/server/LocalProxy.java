@@ -0,0 +1,660 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.akelius.automation.data.TestData;
+
+/**
+ * A local HTTP forward proxy for the browsers of the suite. Requests whose URL matches one of the
+ * blocked patterns are answered right away with an empty response instead of being downloaded,
+ * everything else is forwarded as is.
+ *
+ * <p>HTTPS traffic goes through CONNECT tunnels, so the proxy only sees the host of an HTTPS
+ * request. Its patterns are matched against {@code https://host/}: a host pattern like {@code
+ * *google-analytics.com*} blocks the whole tunnel, a path pattern like {@code *.woff2} only
+ * applies to plain HTTP.
+ */
+public class LocalProxy {
+
+  protected static final Logger logger = LogManager.getLogger(LocalProxy.class);
+
+  private static final String CRLF = "\r\n";
+  private static final String CONNECT_METHOD = "CONNECT";
+  private static final String HEAD_METHOD = "HEAD";
+  /** Hop-by-hop headers, they only apply to one connection and are never forwarded. */
+  private static final List<String> HOP_BY_HOP_HEADERS =
+      Arrays.asList(
+          "connection",
+          "keep-alive",
+          "proxy-connection",
+          "proxy-authorization",
+          "proxy-authenticate",
+          "te",
+          "trailer",
+          "upgrade");
+
+  private final Map<String, Pattern> blockedPatterns = new LinkedHashMap<>();
+  private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+  private ServerSocket serverSocket;
+  private ExecutorService executor;
+
+  // metrics
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong tunnels = new AtomicLong();
+  private final AtomicLong downloadedBytes = new AtomicLong();
+  private final Map<String, AtomicLong> blockedRequests = new ConcurrentHashMap<>();
+
+  /**
+   * @param blockedPatterns The URL patterns to block, where {@code *} matches any text, e.g.
+   *     {@code *.woff2} or {@code *google-analytics.com*}.
+   */
+  public LocalProxy(List<String> blockedPatterns) {
+    for (String blockedPattern : blockedPatterns) {
+      this.blockedPatterns.put(blockedPattern, toRegex(blockedPattern));
+    }
+  }
+
+  /**
+   * Starts the proxy on the given port of the loopback interface, use 0 to pick any free port.
+   *
+   * @param port The port to listen on.
+   * @return The port the proxy listens on.
+   */
+  public synchronized int start(int port) {
+    try {
+      serverSocket = new ServerSocket();
+      serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to start the local proxy. Exception = " + e);
+    }
+
+    // one thread per connection, a browser keeps several of them open at the same time
+    executor = Executors.newCachedThreadPool();
+    ServerSocket acceptingSocket = serverSocket;
+    executor.execute(() -> accept(acceptingSocket));
+
+    logger.info("Local proxy started on port " + getPort());
+    return getPort();
+  }
+
+  /** Stops the proxy and closes all its connections. */
+  public synchronized void stop() {
+    if (serverSocket != null) {
+      try {
+        serverSocket.close();
+      } catch (IOException e) {
+        // the socket is unusable either way
+      }
+      openSockets.forEach(LocalProxy::closeQuietly);
+      executor.shutdownNow();
+      serverSocket = null;
+      logger.info("Local proxy stopped. " + getMetrics());
+    }
+  }
+
+  /** @return The port the proxy listens on. */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /** @return A summary of the traffic that went through the proxy so far. */
+  public String getMetrics() {
+    return String.format(
+        "requests = %s, HTTPS tunnels = %s, blocked requests = %s %s, downloaded bytes = %s",
+        requests.get(),
+        tunnels.get(),
+        getBlockedCount(),
+        getBlockedCountByPattern(),
+        downloadedBytes.get());
+  }
+
+  /** @return The number of plain HTTP requests and HTTPS tunnels the browsers opened. */
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  public long getTunnelCount() {
+    return tunnels.get();
+  }
+
+  /** @return The number of bytes received from the websites, including the HTTPS tunnels. */
+  public long getDownloadedBytes() {
+    return downloadedBytes.get();
+  }
+
+  /** @return The number of requests that were blocked instead of downloaded. */
+  public long getBlockedCount() {
+    return blockedRequests.values().stream().mapToLong(AtomicLong::get).sum();
+  }
+
+  /** @return The number of blocked requests for each pattern that blocked at least one. */
+  public Map<String, Long> getBlockedCountByPattern() {
+    return blockedPatterns
+        .keySet()
+        .stream()
+        .filter(blockedRequests::containsKey)
+        .collect(
+            Collectors.toMap(
+                pattern -> pattern,
+                pattern -> blockedRequests.get(pattern).get(),
+                (first, second) -> first,
+                LinkedHashMap::new));
+  }
+
+  /**
+   * @param url The URL of a request, {@code https://host/} for an HTTPS tunnel.
+   * @return The first pattern that matches the URL, or null if the request is allowed.
+   */
+  public String findBlockingPattern(String url) {
+    for (Map.Entry<String, Pattern> blockedPattern : blockedPatterns.entrySet()) {
+      if (blockedPattern.getValue().matcher(url).matches()) {
+        return blockedPattern.getKey();
+      }
+    }
+    return null;
+  }
+
+  private void accept(ServerSocket acceptingSocket) {
+    while (!acceptingSocket.isClosed()) {
+      try {
+        Socket client = acceptingSocket.accept();
+        executor.execute(() -> handle(client));
+      } catch (IOException e) {
+        if (!acceptingSocket.isClosed()) {
+          logger.info("The local proxy failed to accept a connection. Exception = " + e);
+        }
+      } catch (RejectedExecutionException e) {
+        // the executor refuses new connections once the proxy is stopped
+        return;
+      }
+    }
+  }
+
+  /** Serves the requests of one browser connection until one of the two sides closes it. */
+  private void handle(Socket client) {
+    openSockets.add(client);
+    try (Socket clientSocket = client) {
+      InputStream clientInput = new BufferedInputStream(clientSocket.getInputStream());
+      OutputStream clientOutput = clientSocket.getOutputStream();
+
+      boolean keepAlive = true;
+      while (keepAlive) {
+        MessageHead request = MessageHead.read(clientInput);
+        if (request == null) {
+          return;
+        }
+
+        requests.incrementAndGet();
+        if (CONNECT_METHOD.equalsIgnoreCase(request.getMethod())) {
+          tunnel(request, clientSocket, clientInput, clientOutput);
+          return;
+        }
+        keepAlive = forward(request, clientInput, clientOutput);
+      }
+    } catch (SocketException e) {
+      // the browser or the website dropped the connection, nothing to answer anymore
+    } catch (IOException | RuntimeException e) {
+      logger.info("The local proxy failed to handle a connection. Exception = " + e);
+    } finally {
+      openSockets.remove(client);
+    }
+  }
+
+  /**
+   * Forwards one plain HTTP request to the website and relays the response back to the browser.
+   *
+   * @return True if the browser connection can be used for another request
+   */
+  private boolean forward(MessageHead request, InputStream clientInput, OutputStream clientOutput)
+      throws IOException {
+    URI uri = URI.create(request.getTarget());
+    if (uri.getHost() == null) {
+      MessageHead.respond(clientOutput, 400, "Bad Request", false);
+      return false;
+    }
+
+    boolean keepAlive = request.isKeepAlive();
+    String blockingPattern = findBlockingPattern(request.getTarget());
+    if (blockingPattern != null) {
+      MessageBody.skip(request, clientInput);
+      block(blockingPattern);
+      MessageHead.respond(clientOutput, 204, "No Content", keepAlive);
+      return keepAlive;
+    }
+
+    boolean responseStarted = false;
+    try (Socket upstream = new Socket()) {
+      openSockets.add(upstream);
+      upstream.connect(
+          new InetSocketAddress(uri.getHost(), uri.getPort() == -1 ? 80 : uri.getPort()),
+          TestData.PROXY_CONNECT_TIMEOUT_MILLI);
+      OutputStream upstreamOutput = upstream.getOutputStream();
+      InputStream upstreamInput =
+          new CountingInputStream(
+              new BufferedInputStream(upstream.getInputStream()), downloadedBytes);
+
+      // one request per website connection, the response then ends at the latest on close
+      MessageHead upstreamRequest = request.withoutHopByHopHeaders();
+      String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+      upstreamRequest.setTarget(path + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery()));
+      upstreamRequest.setHeader("Connection", "close");
+      upstreamRequest.write(upstreamOutput);
+      MessageBody.relay(request, clientInput, upstreamOutput);
+      upstreamOutput.flush();
+
+      MessageHead response = MessageHead.read(upstreamInput);
+      if (response == null) {
+        MessageHead.respond(clientOutput, 502, "Bad Gateway", false);
+        return false;
+      }
+
+      boolean delimited = MessageBody.isDelimited(request, response);
+      MessageHead clientResponse = response.withoutHopByHopHeaders();
+      if (response.isChunked()) {
+        clientResponse.setHeader("Transfer-Encoding", "chunked");
+      }
+      keepAlive &= delimited;
+      clientResponse.setHeader("Connection", keepAlive ? "keep-alive" : "close");
+      responseStarted = true;
+      clientResponse.write(clientOutput);
+      if (MessageBody.hasBody(request, response)) {
+        MessageBody.relay(response, upstreamInput, clientOutput);
+      }
+      clientOutput.flush();
+      return keepAlive;
+    } catch (IOException e) {
+      logger.info(
+          String.format(
+              "The local proxy failed to forward [%s]. Exception = %s", request.getTarget(), e));
+      // a 502 can't follow the head of a response the browser already received
+      if (!responseStarted) {
+        MessageHead.respond(clientOutput, 502, "Bad Gateway", false);
+      }
+      return false;
+    } finally {
+      openSockets.removeIf(Socket::isClosed);
+    }
+  }
+
+  /** Opens a raw tunnel to the website for an HTTPS connection, unless its host is blocked. */
+  private void tunnel(
+      MessageHead request, Socket clientSocket, InputStream clientInput, OutputStream clientOutput)
+      throws IOException {
+    tunnels.incrementAndGet();
+    String[] hostAndPort = request.getTarget().split(":");
+    String host = hostAndPort[0];
+    int port = hostAndPort.length > 1 ? Integer.parseInt(hostAndPort[1]) : 443;
+
+    String blockingPattern =
+        findBlockingPattern(String.format("https://%s%s/", host, port == 443 ? "" : ":" + port));
+    if (blockingPattern != null) {
+      block(blockingPattern);
+      MessageHead.respond(clientOutput, 403, "Forbidden", false);
+      return;
+    }
+
+    boolean established = false;
+    try (Socket upstream = new Socket()) {
+      openSockets.add(upstream);
+      upstream.connect(new InetSocketAddress(host, port), TestData.PROXY_CONNECT_TIMEOUT_MILLI);
+      established = true;
+      clientOutput.write(
+          ("HTTP/1.1 200 Connection Established" + CRLF + CRLF)
+              .getBytes(StandardCharsets.ISO_8859_1));
+      clientOutput.flush();
+
+      InputStream upstreamInput = upstream.getInputStream();
+      OutputStream upstreamOutput = upstream.getOutputStream();
+      executor.execute(
+          () -> {
+            try {
+              pipe(clientInput, upstreamOutput, null);
+            } catch (IOException e) {
+              // closed by one of the two sides
+            } finally {
+              closeQuietly(upstream);
+            }
+          });
+      pipe(upstreamInput, clientOutput, downloadedBytes);
+    } catch (IOException e) {
+      // once the tunnel is established the connection carries TLS, a 502 would corrupt it
+      if (!established && !clientSocket.isClosed()) {
+        MessageHead.respond(clientOutput, 502, "Bad Gateway", false);
+      }
+    } finally {
+      openSockets.removeIf(Socket::isClosed);
+    }
+  }
+
+  private void block(String blockingPattern) {
+    blockedRequests.computeIfAbsent(blockingPattern, pattern -> new AtomicLong()).incrementAndGet();
+  }
+
+  private static void pipe(InputStream input, OutputStream output, AtomicLong counter)
+      throws IOException {
+    byte[] buffer = new byte[TestData.PROXY_BUFFER_SIZE];
+    for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+      output.write(buffer, 0, read);
+      output.flush();
+      if (counter != null) {
+        counter.addAndGet(read);
+      }
+    }
+  }
+
+  private static void closeQuietly(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // nothing left to clean
+    }
+  }
+
+  /** Turns a pattern where {@code *} matches any text into a regular expression. */
+  private static Pattern toRegex(String pattern) {
+    return Pattern.compile(
+        Arrays.stream(pattern.split("\\*", -1))
+            .map(Pattern::quote)
+            .collect(Collectors.joining(".*")),
+        Pattern.CASE_INSENSITIVE);
+  }
+
+  /** The start line and the headers of a request or a response. */
+  static class MessageHead {
+
+    private String startLine;
+    private final List<String[]> headers = new ArrayList<>();
+
+    /** @return The next message head of the stream, or null if the stream ended before it. */
+    static MessageHead read(InputStream input) throws IOException {
+      String line = readLine(input);
+      // tolerate the empty lines some clients send between requests
+      while (line != null && line.isEmpty()) {
+        line = readLine(input);
+      }
+      if (line == null) {
+        return null;
+      }
+
+      MessageHead head = new MessageHead();
+      head.startLine = line;
+      for (line = readLine(input); line != null && !line.isEmpty(); line = readLine(input)) {
+        int separator = line.indexOf(':');
+        if (separator > 0) {
+          head.headers.add(
+              new String[] {
+                line.substring(0, separator).trim(), line.substring(separator + 1).trim()
+              });
+        }
+      }
+      return head;
+    }
+
+    /** Writes a response without a body, for the requests the proxy answers on its own. */
+    static void respond(OutputStream output, int status, String reason, boolean keepAlive)
+        throws IOException {
+      MessageHead head = new MessageHead();
+      head.startLine = String.format("HTTP/1.1 %s %s", status, reason);
+      head.setHeader("Content-Length", "0");
+      head.setHeader("Connection", keepAlive ? "keep-alive" : "close");
+      head.write(output);
+      output.flush();
+    }
+
+    void write(OutputStream output) throws IOException {
+      StringBuilder text = new StringBuilder(startLine).append(CRLF);
+      for (String[] header : headers) {
+        text.append(header[0]).append(": ").append(header[1]).append(CRLF);
+      }
+      output.write(text.append(CRLF).toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    String getMethod() {
+      return startLine.split(" ")[0];
+    }
+
+    String getTarget() {
+      String[] parts = startLine.split(" ");
+      return parts.length > 1 ? parts[1] : "";
+    }
+
+    void setTarget(String target) {
+      String[] parts = startLine.split(" ");
+      startLine = String.format("%s %s %s", parts[0], target, parts.length > 2 ? parts[2] : "");
+    }
+
+    boolean isResponse() {
+      return startLine.startsWith("HTTP/");
+    }
+
+    /** @return The status code of a response, or -1 if it can't be read. */
+    int getStatus() {
+      String[] parts = startLine.split(" ");
+      try {
+        return parts.length > 1 ? Integer.parseInt(parts[1]) : -1;
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+    }
+
+    String getHeader(String name) {
+      for (String[] header : headers) {
+        if (header[0].equalsIgnoreCase(name)) {
+          return header[1];
+        }
+      }
+      return null;
+    }
+
+    void setHeader(String name, String value) {
+      headers.removeIf(header -> header[0].equalsIgnoreCase(name));
+      headers.add(new String[] {name, value});
+    }
+
+    /** @return The content length, or -1 if the message doesn't declare one. */
+    long getContentLength() {
+      String contentLength = getHeader("Content-Length");
+      try {
+        return contentLength == null ? -1 : Long.parseLong(contentLength.trim());
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+    }
+
+    boolean isChunked() {
+      String transferEncoding = getHeader("Transfer-Encoding");
+      return transferEncoding != null && transferEncoding.toLowerCase().contains("chunked");
+    }
+
+    /** @return True if the browser wants to send more requests over the same connection. */
+    boolean isKeepAlive() {
+      String connection = getHeader("Proxy-Connection");
+      connection = connection == null ? getHeader("Connection") : connection;
+      if (startLine.endsWith("HTTP/1.0")) {
+        return connection != null && connection.equalsIgnoreCase("keep-alive");
+      }
+      return connection == null || !connection.equalsIgnoreCase("close");
+    }
+
+    MessageHead withoutHopByHopHeaders() {
+      MessageHead copy = new MessageHead();
+      copy.startLine = startLine;
+      for (String[] header : headers) {
+        if (!HOP_BY_HOP_HEADERS.contains(header[0].toLowerCase())
+            && !header[0].equalsIgnoreCase("Transfer-Encoding")) {
+          copy.headers.add(header);
+        }
+      }
+      return copy;
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      for (int read = input.read(); read != -1; read = input.read()) {
+        if (read == '\n') {
+          byte[] bytes = line.toByteArray();
+          int length = bytes.length;
+          if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+          }
+          return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+        line.write(read);
+      }
+      return line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1.name());
+    }
+  }
+
+  /** Copies the body of a message according to how its length is declared. */
+  static class MessageBody {
+
+    private MessageBody() {}
+
+    /** @return True if the response has a body at all, whatever its length. */
+    static boolean hasBody(MessageHead request, MessageHead response) {
+      int status = response.getStatus();
+      return !HEAD_METHOD.equalsIgnoreCase(request.getMethod())
+          && !(status >= 100 && status < 200)
+          && status != 204
+          && status != 304;
+    }
+
+    /** @return True if the end of the response body is known without closing the connection. */
+    static boolean isDelimited(MessageHead request, MessageHead response) {
+      return !hasBody(request, response)
+          || response.isChunked()
+          || response.getContentLength() >= 0;
+    }
+
+    /** Reads the body of a request away, for a request that is answered without forwarding it. */
+    static void skip(MessageHead request, InputStream input) throws IOException {
+      relay(request, input, new ByteArrayOutputStream());
+    }
+
+    /**
+     * Copies a body as it is, chunks included. A response without a declared length is copied
+     * until the website closes the connection, a request without one has no body.
+     */
+    static void relay(MessageHead head, InputStream input, OutputStream output) throws IOException {
+      if (head.isChunked()) {
+        relayChunks(input, output);
+      } else if (head.getContentLength() >= 0) {
+        copy(input, output, head.getContentLength());
+      } else if (head.isResponse()) {
+        pipe(input, output, null);
+      }
+    }
+
+    private static void relayChunks(InputStream input, OutputStream output) throws IOException {
+      while (true) {
+        String sizeLine = MessageHead.readLine(input);
+        if (sizeLine == null) {
+          throw new IOException("The chunked body ended before its last chunk.");
+        }
+        output.write((sizeLine + CRLF).getBytes(StandardCharsets.ISO_8859_1));
+
+        int extension = sizeLine.indexOf(';');
+        String size = extension == -1 ? sizeLine : sizeLine.substring(0, extension);
+        long length = Long.parseLong(size.trim(), 16);
+        if (length == 0) {
+          // the trailers end with an empty line, like the headers
+          for (String trailer = MessageHead.readLine(input);
+              trailer != null;
+              trailer = MessageHead.readLine(input)) {
+            output.write((trailer + CRLF).getBytes(StandardCharsets.ISO_8859_1));
+            if (trailer.isEmpty()) {
+              break;
+            }
+          }
+          return;
+        }
+
+        copy(input, output, length);
+        output.write((MessageHead.readLine(input) + CRLF).getBytes(StandardCharsets.ISO_8859_1));
+      }
+    }
+
+    private static void copy(InputStream input, OutputStream output, long length)
+        throws IOException {
+      byte[] buffer = new byte[TestData.PROXY_BUFFER_SIZE];
+      long remaining = length;
+      while (remaining > 0) {
+        int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (read == -1) {
+          throw new IOException("The body ended after " + (length - remaining) + " bytes.");
+        }
+        output.write(buffer, 0, read);
+        remaining -= read;
+      }
+    }
+  }
+
+  /** Counts the bytes read from a stream into a shared counter. */
+  private static class CountingInputStream extends FilterInputStream {
+
+    private final AtomicLong counter;
+
+    CountingInputStream(InputStream input, AtomicLong counter) {
+      super(input);
+      this.counter = counter;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int read = super.read();
+      if (read != -1) {
+        counter.incrementAndGet();
+      }
+      return read;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int read = super.read(buffer, offset, length);
+      if (read > 0) {
+        counter.addAndGet(read);
+      }
+      return read;
+    }
+  }
+}
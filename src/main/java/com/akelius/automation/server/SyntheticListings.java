@@ -0,0 +1,183 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.server;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.TestData;
+
+/**
+ * Generates large, reproducible sets of apartment listings to stress test the handling of the
+ * search results. The same seed always generates the same listings.
+ */
+public class SyntheticListings {
+
+  private static final String[] STREETS = {
+    "Kastanienallee", "Schönhauser Allee", "Sonnenallee", "Karl-Marx-Straße", "Müllerstraße",
+    "Torstraße", "Bergmannstraße", "Frankfurter Allee", "Prenzlauer Allee", "Greifswalder Straße"
+  };
+  private static final LocalDate FIRST_AVAILABLE_DATE = LocalDate.of(2020, 1, 1);
+  private static final DateTimeFormatter DATE_FORMAT =
+      DateTimeFormatter.ofPattern(TestData.AVAILABLE_FROM_DATE_PATTERN);
+
+  private long seed = 1;
+  private double duplicateRate;
+  private String city = "Berlin";
+  private String postalCode = "10115";
+  private double meanSize = 65;
+  private double sizeDeviation = 20;
+  private int minSize = 20;
+  private int maxSize = 160;
+  private int minRentPerSquareMeter = 8;
+  private int maxRentPerSquareMeter = 25;
+  private int availabilityDays = 180;
+
+  /** @param seed The seed of the random generator. */
+  public SyntheticListings seed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  /**
+   * @param duplicateRate The share of listings (0 to 1) that repeat the values of an earlier one.
+   */
+  public SyntheticListings duplicateRate(double duplicateRate) {
+    if (duplicateRate < 0 || duplicateRate > 1) {
+      throw new IllegalArgumentException("The duplicate rate must be between 0 and 1.");
+    }
+    this.duplicateRate = duplicateRate;
+    return this;
+  }
+
+  /** @param city The city of the listings and the postal code used in their address. */
+  public SyntheticListings city(String city, String postalCode) {
+    this.city = city;
+    this.postalCode = postalCode;
+    return this;
+  }
+
+  /**
+   * Sizes follow a normal distribution, cut at the minimum and maximum sizes.
+   *
+   * @param meanSize The mean size in square meters.
+   * @param sizeDeviation The standard deviation of the size in square meters.
+   * @param minSize The smallest possible size in square meters.
+   * @param maxSize The biggest possible size in square meters.
+   */
+  public SyntheticListings sizes(double meanSize, double sizeDeviation, int minSize, int maxSize) {
+    this.meanSize = meanSize;
+    this.sizeDeviation = sizeDeviation;
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    return this;
+  }
+
+  /**
+   * The rent per square meter is uniformly distributed between the minimum and maximum.
+   *
+   * @param minRentPerSquareMeter The lowest rent per square meter.
+   * @param maxRentPerSquareMeter The highest rent per square meter.
+   */
+  public SyntheticListings rentPerSquareMeter(
+      int minRentPerSquareMeter, int maxRentPerSquareMeter) {
+    this.minRentPerSquareMeter = minRentPerSquareMeter;
+    this.maxRentPerSquareMeter = maxRentPerSquareMeter;
+    return this;
+  }
+
+  /** @param availabilityDays The available from dates are spread over this number of days. */
+  public SyntheticListings availabilityDays(int availabilityDays) {
+    this.availabilityDays = availabilityDays;
+    return this;
+  }
+
+  /**
+   * Generates the listings. Duplicates are new objects with the same values as an earlier listing,
+   * like two cards of the same apartment on the website.
+   *
+   * @param count The number of listings to generate.
+   * @return The generated listings.
+   */
+  public List<Apartment> generate(int count) {
+    Random random = new Random(seed);
+    List<Apartment> apartments = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      if (i > 0 && random.nextDouble() < duplicateRate) {
+        apartments.add(copy(apartments.get(random.nextInt(i))));
+        continue;
+      }
+
+      int size =
+          (int)
+              Math.max(
+                  minSize,
+                  Math.min(maxSize, Math.round(meanSize + random.nextGaussian() * sizeDeviation)));
+      int rooms = Math.max(1, Math.min(6, Math.round(size / 25f)));
+      int rentPerSquareMeter =
+          minRentPerSquareMeter + random.nextInt(maxRentPerSquareMeter - minRentPerSquareMeter + 1);
+
+      apartments.add(
+          new Apartment(
+              String.format("%s-room apartment in %s #%s", rooms, city, i + 1),
+              String.format(
+                  "%s %s\n%s %s",
+                  STREETS[random.nextInt(STREETS.length)],
+                  1 + random.nextInt(200),
+                  postalCode,
+                  city),
+              String.valueOf(rooms),
+              size,
+              String.format("%s. floor", random.nextInt(10)),
+              size * rentPerSquareMeter,
+              FIRST_AVAILABLE_DATE.plusDays(random.nextInt(availabilityDays)).format(DATE_FORMAT)));
+    }
+    return apartments;
+  }
+
+  /**
+   * The texts of the fields of an apartment card as the browser displays them, in the order the
+   * card parser expects them.
+   *
+   * @param apartment The apartment to display.
+   * @return The raw texts of the card.
+   */
+  public static List<String> toCardTexts(Apartment apartment) {
+    return Arrays.asList(
+        apartment.getTitle(),
+        apartment.getAddress(),
+        "rooms " + apartment.getRooms(),
+        apartment.getSize() + " m²",
+        apartment.getFloor(),
+        "€ " + String.format(Locale.GERMANY, "%,d", apartment.getRent()),
+        "available from " + apartment.getAvailableFrom());
+  }
+
+  private static Apartment copy(Apartment apartment) {
+    return new Apartment(
+        apartment.getTitle(),
+        apartment.getAddress(),
+        apartment.getRooms(),
+        apartment.getSize(),
+        apartment.getFloor(),
+        apartment.getRent(),
+        apartment.getAvailableFrom());
+  }
+}
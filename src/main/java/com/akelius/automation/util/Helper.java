@@ -12,25 +12,43 @@
  */
 package com.akelius.automation.util;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.openqa.selenium.Alert;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.firefox.FirefoxDriver;
 import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
 
 import com.akelius.automation.core.DriverManager;
+import com.akelius.automation.core.WaitEngine;
 import com.akelius.automation.data.TestData;
 
 /** provides some helper functions that can be used across the framework. */
 public class Helper {
 
+  /** The most recently used compiled regular expressions, so they are not compiled every time. */
+  private static final Map<String, Pattern> patternCache =
+      new LinkedHashMap<String, Pattern>(TestData.REGEX_CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+          return size() > TestData.REGEX_CACHE_SIZE;
+        }
+      };
+
   /** Returns true if the currently used browser is Firefox */
   public static boolean isFirefox() {
     if (DriverManager.getDriver() == null) {
@@ -68,14 +86,38 @@ public class Helper {
 
   /** Wait for page loading to complete */
   public static void waitForPageLoadingToComplete() {
-    new WebDriverWait(DriverManager.getDriver(), TestData.TWENTY_SECOND_WAIT_MILLI)
+    new WaitEngine(DriverManager.getDriver(), TestData.TWENTY_SECOND_WAIT_MILLI)
         .until(
+            "page loading to complete",
             driver ->
                 ((JavascriptExecutor) driver)
                     .executeScript(TestData.WAIT_FOR_PAGE_LOADING)
                     .equals(TestData.COMPLETE_STATE));
   }
 
+  /**
+   * Wait for the page to finish loading and for the Angular application on it to become stable,
+   * i.e. all its pending timers and HTTP requests are done. Pages that are not Angular applications
+   * only wait for the page loading to complete.
+   */
+  public static void waitForAngularToBeStable() {
+    new WaitEngine(DriverManager.getDriver(), TestData.TWENTY_SECOND_WAIT_MILLI)
+        .until(
+            "Angular application to be stable",
+            driver -> {
+              try {
+                return (Boolean)
+                    ((JavascriptExecutor) driver)
+                        .executeAsyncScript(
+                            TestData.WAIT_FOR_ANGULAR_STABILITY_SCRIPT,
+                            TestData.ANGULAR_STABILITY_CHECK_MILLI);
+              } catch (WebDriverException e) {
+                // the page is navigating, check again once the new document is there
+                return false;
+              }
+            });
+  }
+
   /** Wait for all Ajax requests on the page to finish loading */
   public static void waitForAjaxToComplete() {
     ExpectedCondition<Boolean> jQueryLoad =
@@ -94,8 +136,8 @@ public class Helper {
           }
         };
 
-    new WebDriverWait(DriverManager.getDriver(), TestData.TWENTY_SECOND_WAIT_MILLI)
-        .until(jQueryLoad);
+    new WaitEngine(DriverManager.getDriver(), TestData.TWENTY_SECOND_WAIT_MILLI)
+        .until("Ajax requests to complete", jQueryLoad);
   }
 
   /**
@@ -105,7 +147,10 @@ public class Helper {
    * @param urlToCheck The URL to check its loading time
    * @return A long representing the amount of time in milliseconds that it took to complete the
    *     request
+   * @deprecated Blocks the page with an alert and needs jQuery. Run with -DnetworkTimings=true and
+   *     use {@link com.akelius.automation.core.NetworkTimingCollector} instead.
    */
+  @Deprecated
   public static long getAjaxRequestLoadingTime(String urlToCheck) {
     String script =
         String.format(
@@ -118,7 +163,7 @@ public class Helper {
 
     // Wait for the alert to appear
     Alert alertWithValue =
-        new WebDriverWait(DriverManager.getDriver(), TestData.TWENTY_SECOND_WAIT_MILLI)
+        new WaitEngine(DriverManager.getDriver(), TestData.TWENTY_SECOND_WAIT_MILLI)
             .until(ExpectedConditions.alertIsPresent());
 
     // Get the alert text and accept it
@@ -151,9 +196,89 @@ public class Helper {
    * @return A String representing the extracted part of the data according to the regex
    */
   public static String extractGroupFromRegex(String regex, String data) {
-    Pattern pattern = Pattern.compile(regex);
-    Matcher matcher = pattern.matcher(data);
+    Matcher matcher = getPattern(regex).matcher(data);
 
     return matcher.find() ? matcher.group(1) : null;
   }
+
+  /**
+   * Parses the regular expression and extracts several groups from its first match, or returns
+   * null if it fails.
+   *
+   * @param regex The regular expression to parse.
+   * @param data The string value to use with the regex.
+   * @param groups The numbers of the groups to extract.
+   * @return An array with the value of each requested group, in the same order as the groups
+   */
+  public static String[] extractGroupsFromRegex(String regex, String data, int... groups) {
+    Matcher matcher = getPattern(regex).matcher(data);
+    if (!matcher.find()) {
+      return null;
+    }
+
+    String[] values = new String[groups.length];
+    for (int i = 0; i < groups.length; i++) {
+      values[i] = matcher.group(groups[i]);
+    }
+    return values;
+  }
+
+  /**
+   * Parses the regular expression and extracts a group from every match in the data.
+   *
+   * @param regex The regular expression to parse.
+   * @param data The string value to use with the regex.
+   * @param group The number of the group to extract.
+   * @return A list of the extracted values, empty if there are no matches
+   */
+  public static List<String> extractAllMatchesFromRegex(String regex, String data, int group) {
+    List<String> values = new ArrayList<>();
+    Matcher matcher = getPattern(regex).matcher(data);
+
+    while (matcher.find()) {
+      values.add(matcher.group(group));
+    }
+    return values;
+  }
+
+  /**
+   * @param url The URL of a page, e.g. the current URL of the browser.
+   * @return The origin of the URL (scheme, host and port), or null if it is not an HTTP or HTTPS
+   *     URL, e.g. about:blank or data:
+   */
+  public static String getOrigin(String url) {
+    URI uri;
+    try {
+      uri = URI.create(url);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+      return null;
+    }
+    return uri.getScheme().toLowerCase(Locale.ROOT) + "://" + uri.getRawAuthority();
+  }
+
+  /**
+   * Gets the compiled version of a regular expression from the cache, or compiles it if it's not
+   * there yet.
+   *
+   * @param regex The regular expression to compile.
+   * @return The compiled pattern.
+   */
+  private static Pattern getPattern(String regex) {
+    synchronized (patternCache) {
+      Pattern pattern = patternCache.get(regex);
+      if (pattern != null) {
+        return pattern;
+      }
+    }
+
+    // compile outside the lock, compiling the same regex twice is harmless
+    Pattern pattern = Pattern.compile(regex);
+    synchronized (patternCache) {
+      patternCache.put(regex, pattern);
+    }
+    return pattern;
+  }
 }
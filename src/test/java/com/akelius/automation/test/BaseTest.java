@@ -12,23 +12,52 @@
  */
 package com.akelius.automation.test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.openqa.selenium.WebDriver;
+import org.testng.ITestContext;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
+import org.testng.annotations.AfterSuite;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeSuite;
+import org.testng.annotations.Listeners;
+import org.testng.xml.XmlSuite.ParallelMode;
 
+import com.akelius.automation.core.BrowserTraffic;
 import com.akelius.automation.core.DriverManager;
+import com.akelius.automation.core.WaitEngine;
+import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.ApartmentBatch;
+import com.akelius.automation.data.ListingDiff;
+import com.akelius.automation.data.ListingSnapshotFile;
 import com.akelius.automation.data.TestData;
 import com.akelius.automation.pages.LandingPage;
+import com.akelius.automation.server.FixtureData;
+import com.akelius.automation.server.FixtureServer;
 
 /** Base test class for the common setup and driver creation for all the test cases. */
+@Listeners({
+  NetworkTimingListener.class,
+  PerformanceBudgetListener.class,
+  TestDurationListener.class,
+  ShardInterceptor.class,
+  LongestFirstInterceptor.class,
+  BrowserTrafficListener.class
+})
 public class BaseTest {
 
   protected static final Logger logger = LogManager.getLogger(BaseTest.class);
-  protected static WebDriver driver = null;
+  private static FixtureServer fixtureServer;
 
   @BeforeMethod
   public void beforeMethod() {
@@ -38,32 +67,151 @@ public class BaseTest {
             + "*************************************************************************************");
   }
 
-  @AfterMethod
-  public void afterMethod() {
+  @AfterMethod(alwaysRun = true)
+  public void afterMethod(ITestContext context) {
     logger.info(
         "\n************************************ TEST END ***************************************\n\n\n");
+
+    /**
+     * With parallel="methods" the methods of a class run on several worker threads, and the
+     * tearDown of the class only runs on one of them, so every method hands its driver back.
+     */
+    if (isParallelMethods(context) && DriverManager.hasDriver()) {
+      DriverManager.quitDriver();
+    }
+  }
+
+  @BeforeSuite
+  public void setUpSuite() {
+    if (TestData.USE_FIXTURE_SERVER) {
+      fixtureServer =
+          new FixtureServer(
+              FixtureData.getApartments(),
+              TestData.FIXTURE_SERVER_LATENCY_MILLI,
+              TestData.FIXTURE_SERVER_JITTER_MILLI);
+      fixtureServer.start(TestData.FIXTURE_SERVER_PORT);
+    }
   }
 
   @BeforeClass
-  public static void setUp() {
-    driver = DriverManager.getDriver();
+  public void setUp() {
+    /**
+     * Start the browser for the thread running this class. When running with
+     * parallel="methods", worker threads that don't own a driver yet create one on first use, and
+     * hand it back after the method.
+     */
+    DriverManager.getDriver();
   }
 
-  @AfterClass
-  public static void tearDown() {
+  @AfterClass(alwaysRun = true)
+  public void tearDown() {
     /**
      * clear after the test is done executing by terminating the running browser instance to prevent
      * memory leaks.
      */
-    if (DriverManager.getDriver() != null) {
-      DriverManager.getDriver().quit();
-      logger.info("Terminating the driver session and killing the browser...");
+    if (DriverManager.hasDriver()) {
+      logger.info(
+          DriverManager.isPoolEnabled()
+              ? "Resetting the driver session and handing it back to the pool..."
+              : "Terminating the driver session and killing the browser...");
+      DriverManager.quitDriver();
+    }
+  }
+
+  @AfterSuite(alwaysRun = true)
+  public void tearDownSuite() {
+    logger.info("Wait statistics: " + WaitEngine.getStatistics());
+    if (DriverManager.isPoolEnabled()) {
+      logger.info("Browser session pool metrics: " + DriverManager.getPoolMetrics());
+    }
+
+    /** Kill any browser that was left behind by the worker threads of a parallel run. */
+    DriverManager.quitAllDrivers();
+    BrowserTraffic.shutdown();
+
+    if (fixtureServer != null) {
+      fixtureServer.stop();
+      fixtureServer = null;
+    }
+  }
+
+  /**
+   * Logs the next step of the test and starts measuring it, the steps are numbered automatically.
+   *
+   * @param description What the step does.
+   */
+  protected void step(String description) {
+    logger.info(String.format("STEP %s - %s", TestDurationListener.startStep(), description));
+  }
+
+  private static boolean isParallelMethods(ITestContext context) {
+    ParallelMode parallel = context.getSuite().getXmlSuite().getParallel();
+    return parallel == ParallelMode.METHODS || parallel == ParallelMode.TRUE;
+  }
+
+  /** @return The driver instance that belongs to the current thread. */
+  protected WebDriver getDriver() {
+    return DriverManager.getDriver();
+  }
+
+  /**
+   * Logs the differences with the latest snapshot of the city and appends the apartments to the
+   * snapshot file of the run, if one was given.
+   *
+   * @param city The city the apartments were searched in.
+   * @param apartments The apartments extracted from the search results.
+   */
+  protected void saveListingSnapshot(String city, List<Apartment> apartments) {
+    if (TestData.LISTING_SNAPSHOT_FILE == null) {
+      return;
+    }
+
+    Path snapshotFile = Paths.get(TestData.LISTING_SNAPSHOT_FILE);
+    try {
+      if (Files.exists(snapshotFile)) {
+        Optional<ListingSnapshotFile.Segment> baseline =
+            ListingSnapshotFile.open(snapshotFile).findLatest(city);
+        if (baseline.isPresent()) {
+          logger.info(
+              String.format(
+                  "Changes in %s since the snapshot of %s: %s",
+                  city,
+                  Instant.ofEpochMilli(baseline.get().getTimestamp()),
+                  ListingDiff.compare(baseline.get().toBatch(), apartments).getReport()));
+        }
+      }
+
+      ListingSnapshotFile.append(
+          snapshotFile,
+          city,
+          System.currentTimeMillis(),
+          ApartmentBatch.of(apartments));
+      logger.info(
+          String.format(
+              "Saved a snapshot of %s apartments in %s to %s.",
+              apartments.size(), city, TestData.LISTING_SNAPSHOT_FILE));
+    } catch (IOException e) {
+      logger.warn("Failed to save the listing snapshot. Exception = " + e);
     }
   }
 
   /** @return An object of the LandingPage. */
   public LandingPage navigateToLandingPage() {
-    driver.navigate().to(TestData.LANDING_PAGE);
+    getDriver().navigate().to(TestData.LANDING_PAGE);
     return new LandingPage();
   }
+
+  /**
+   * Opens the landing page directly in a locale, without going through the language dialog.
+   *
+   * @param locale The locale to open the website in, e.g. {@link TestData#EN_UK_LOCALE}.
+   * @return An object of the LandingPage in the locale.
+   */
+  public LandingPage navigateToLandingPage(String locale) {
+    getDriver().navigate().to(LandingPage.getLocaleUrl(TestData.LANDING_PAGE, locale));
+    LandingPage landingPage = new LandingPage();
+    return landingPage.isLocale(locale) && landingPage.isDisplayedIn(locale)
+        ? landingPage
+        : landingPage.changeLanguage(locale);
+  }
 }
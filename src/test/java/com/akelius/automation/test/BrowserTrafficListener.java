@@ -0,0 +1,46 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.Reporter;
+
+import com.akelius.automation.core.BrowserCache;
+import com.akelius.automation.core.BrowserTraffic;
+
+/**
+ * Adds the requests and bytes the browsers skipped or downloaded, and the hits of their disk cache,
+ * to the TestNG report.
+ */
+public class BrowserTrafficListener implements ISuiteListener {
+
+  protected static final Logger logger = LogManager.getLogger(BrowserTrafficListener.class);
+
+  @Override
+  public void onFinish(ISuite suite) {
+    String metrics = BrowserTraffic.getMetrics();
+    if (metrics != null) {
+      Reporter.log("Browser traffic: " + metrics);
+      logger.info("Browser traffic: " + metrics);
+    }
+
+    String cacheMetrics = BrowserCache.getMetrics();
+    if (cacheMetrics != null) {
+      Reporter.log("Browser cache: " + cacheMetrics);
+      logger.info("Browser cache: " + cacheMetrics);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.ApartmentBatch;
+import com.akelius.automation.data.CompactApartment;
+
+/** Runs without a browser: the compact forms must give back exactly the extracted values. */
+public class CompactApartmentTest {
+
+  @DataProvider
+  public Object[][] roomsTexts() {
+    return new Object[][] {
+      {"3", 3f}, {"2.5", 2.5f}, {"2,5", 2.5f}, {" 4 ", 4f}, {"3.0", 3f}, {"zwei", Float.NaN},
+      {"", Float.NaN}, {null, Float.NaN}
+    };
+  }
+
+  @Test(dataProvider = "roomsTexts")
+  public void parseRooms(String text, float rooms) {
+    Assert.assertEquals(
+        Float.compare(CompactApartment.parseRooms(text), rooms), 0, "Rooms of '" + text + "'");
+  }
+
+  @Test
+  public void parseAvailableFrom() {
+    Assert.assertEquals(
+        CompactApartment.parseAvailableFrom("01.05.2021"), LocalDate.of(2021, 5, 1).toEpochDay());
+    Assert.assertEquals(
+        CompactApartment.parseAvailableFrom(" 29.02.2024 "),
+        LocalDate.of(2024, 2, 29).toEpochDay());
+    Assert.assertEquals(
+        CompactApartment.parseAvailableFrom("sofort"), CompactApartment.UNKNOWN_DATE);
+    Assert.assertEquals(
+        CompactApartment.parseAvailableFrom("2021-05-01"), CompactApartment.UNKNOWN_DATE);
+    Assert.assertEquals(CompactApartment.parseAvailableFrom(null), CompactApartment.UNKNOWN_DATE);
+  }
+
+  @DataProvider
+  public Object[][] apartments() {
+    List<Object[]> apartments = new ArrayList<>();
+    for (Apartment apartment : getApartments()) {
+      apartments.add(new Object[] {apartment});
+    }
+    return apartments.toArray(new Object[0][]);
+  }
+
+  @Test(dataProvider = "apartments")
+  public void compactApartmentGivesBackTheOriginalValues(Apartment apartment) {
+    CompactApartment compact = CompactApartment.of(apartment);
+    Apartment restored = compact.toApartment();
+
+    Assert.assertEquals(restored, apartment);
+    Assert.assertEquals(restored.getRooms(), apartment.getRooms());
+    Assert.assertEquals(restored.getAvailableFrom(), apartment.getAvailableFrom());
+    Assert.assertEquals(restored.getId(), apartment.getId());
+    Assert.assertEquals(CompactApartment.of(restored), compact);
+    Assert.assertEquals(CompactApartment.of(restored).hashCode(), compact.hashCode());
+  }
+
+  @Test
+  public void textsInAnotherFormatAreNotEqualToTheCanonicalOnes() {
+    Apartment canonical = new Apartment("Altbau", "Ringstraße 1", "3", 72, "EG", 890, "01.05.2021");
+    Apartment otherRooms =
+        new Apartment("Altbau", "Ringstraße 1", "3.0", 72, "EG", 890, "01.05.2021");
+    Apartment otherDate = new Apartment("Altbau", "Ringstraße 1", "3", 72, "EG", 890, "1.5.2021");
+
+    Assert.assertNotEquals(CompactApartment.of(otherRooms), CompactApartment.of(canonical));
+    Assert.assertNotEquals(CompactApartment.of(otherDate), CompactApartment.of(canonical));
+    Assert.assertEquals(
+        CompactApartment.of(otherRooms).getRooms(), CompactApartment.of(canonical).getRooms());
+  }
+
+  @Test
+  public void addressesAndFloorsAreShared() {
+    CompactApartment first =
+        CompactApartment.of(
+            new Apartment("A", new String("Ringstraße 12"), "2", 50, new String("EG"), 600, null));
+    CompactApartment second =
+        CompactApartment.of(
+            new Apartment("B", new String("Ringstraße 12"), "3", 70, new String("EG"), 800, null));
+
+    Assert.assertSame(first.getAddress(), second.getAddress());
+    Assert.assertSame(first.getFloor(), second.getFloor());
+  }
+
+  @Test
+  public void batchGivesBackTheApartmentsInOrder() {
+    List<Apartment> apartments = new ArrayList<>();
+    for (int copy = 0; copy < 40; copy++) {
+      for (Apartment apartment : getApartments()) {
+        apartment.setId(apartment.getId() == null ? null : apartment.getId() + "-" + copy);
+        apartments.add(apartment);
+      }
+    }
+    // a capacity of one makes every column grow several times
+    ApartmentBatch batch = new ApartmentBatch(1);
+    apartments.forEach(batch::add);
+
+    Assert.assertEquals(batch.size(), apartments.size());
+    for (int i = 0; i < apartments.size(); i++) {
+      Apartment apartment = apartments.get(i);
+      CompactApartment compact = CompactApartment.of(apartment);
+      Assert.assertEquals(batch.get(i), compact, "Apartment " + i);
+      Assert.assertEquals(batch.get(i).toApartment(), apartment, "Apartment " + i);
+      Assert.assertEquals(batch.getId(i), apartment.getId());
+      Assert.assertEquals(batch.getTitle(i), apartment.getTitle());
+      Assert.assertEquals(batch.getAddress(i), apartment.getAddress());
+      Assert.assertEquals(Float.compare(batch.getRooms(i), compact.getRooms()), 0);
+      Assert.assertEquals(batch.getSize(i), apartment.getSize());
+      Assert.assertEquals(batch.getFloor(i), apartment.getFloor());
+      Assert.assertEquals(batch.getRent(i), apartment.getRent());
+      Assert.assertEquals(batch.getAvailableFrom(i), compact.getAvailableFrom());
+    }
+
+    batch.trimToSize();
+    Assert.assertEquals(batch.stream().toArray().length, apartments.size());
+    int last = apartments.size() - 1;
+    Assert.assertEquals(batch.get(last).toApartment(), apartments.get(last));
+    Assert.assertThrows(IndexOutOfBoundsException.class, () -> batch.get(last + 1));
+    Assert.assertThrows(IndexOutOfBoundsException.class, () -> batch.getRent(-1));
+  }
+
+  private static List<Apartment> getApartments() {
+    List<Apartment> apartments =
+        Arrays.asList(
+            new Apartment("Altbau", "Müllerstraße 35", "3", 72, "2. OG", 890, "01.05.2021"),
+            new Apartment("Neubau", "Hauptstraße 1", "2,5", 55, "EG", 640, "sofort"),
+            new Apartment("Loft", "Am Hafen 7", "1.5", 38, null, 510, "15.06.2021"),
+            new Apartment("Studio", null, "3.0", 30, "1. OG", 0, "1.7.2021"),
+            new Apartment(null, "Ringstraße 12", "auf Anfrage", 96, "5. OG", 1400, null),
+            new Apartment("Penthouse", "Ringstraße 12", null, 120, "DG", 2100, "31.12.2099"));
+    for (int i = 0; i < apartments.size() - 1; i++) {
+      apartments.get(i).setId("1-" + i);
+    }
+    return apartments;
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.testng.IMethodInstance;
+import org.testng.ITestNGMethod;
+
+/**
+ * Splits test methods into the groups that have to run together because they depend on each
+ * other, through dependsOnMethods (plain or qualified names, or regular expressions) or
+ * dependsOnGroups.
+ */
+class DependencyGroups {
+
+  private DependencyGroups() {}
+
+  /**
+   * @param methods The methods to split.
+   * @return The groups, each one a list of indexes in the methods, in ascending order. The groups
+   *     are in the order of their first method.
+   */
+  static List<List<Integer>> of(List<IMethodInstance> methods) {
+    int[] parents = new int[methods.size()];
+    Arrays.setAll(parents, i -> i);
+    for (int i = 0; i < methods.size(); i++) {
+      for (int dependency : getDependencies(methods, i)) {
+        union(parents, i, dependency);
+      }
+    }
+
+    Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < methods.size(); i++) {
+      groups.computeIfAbsent(find(parents, i), root -> new ArrayList<>()).add(i);
+    }
+    return new ArrayList<>(groups.values());
+  }
+
+  /** @return The indexes of the methods the method at the index depends on. */
+  private static List<Integer> getDependencies(List<IMethodInstance> methods, int index) {
+    ITestNGMethod method = methods.get(index).getMethod();
+    List<Integer> dependencies = new ArrayList<>();
+
+    for (String dependency : method.getMethodsDependedUpon()) {
+      // either "method" or "package.Class.method", the method name can be a regular expression
+      // with dots of its own, so the class is only split off when it's the class of a method
+      String className = method.getRealClass().getName();
+      String methodName = dependency;
+      for (IMethodInstance candidate : methods) {
+        String candidateClass = candidate.getMethod().getRealClass().getName();
+        if (dependency.startsWith(candidateClass + ".")
+            && candidateClass.length() + 1 < dependency.length()) {
+          className = candidateClass;
+          methodName = dependency.substring(candidateClass.length() + 1);
+          break;
+        }
+      }
+      Pattern pattern = compile(methodName);
+      for (int i = 0; i < methods.size(); i++) {
+        ITestNGMethod candidate = methods.get(i).getMethod();
+        if (candidate.getRealClass().getName().equals(className)
+            && pattern.matcher(candidate.getMethodName()).matches()) {
+          dependencies.add(i);
+        }
+      }
+    }
+
+    for (String group : method.getGroupsDependedUpon()) {
+      for (int i = 0; i < methods.size(); i++) {
+        if (Arrays.asList(methods.get(i).getMethod().getGroups()).contains(group)) {
+          dependencies.add(i);
+        }
+      }
+    }
+    return dependencies;
+  }
+
+  private static Pattern compile(String methodName) {
+    try {
+      return Pattern.compile(methodName);
+    } catch (PatternSyntaxException e) {
+      return Pattern.compile(Pattern.quote(methodName));
+    }
+  }
+
+  private static int find(int[] parents, int i) {
+    while (parents[i] != i) {
+      parents[i] = parents[parents[i]];
+      i = parents[i];
+    }
+    return i;
+  }
+
+  private static void union(int[] parents, int a, int b) {
+    int rootA = find(parents, a);
+    int rootB = find(parents, b);
+    // the smaller index becomes the root, so the groups don't depend on the order of the unions
+    if (rootA < rootB) {
+      parents[rootB] = rootA;
+    } else {
+      parents[rootA] = rootB;
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.ApartmentBatch;
+import com.akelius.automation.data.ListingDiff;
+import com.akelius.automation.data.ListingDiff.Change;
+import com.akelius.automation.data.ListingDiff.ChangeType;
+import com.akelius.automation.data.ListingDiff.Field;
+
+/** Runs without a browser: compares lists of apartments built in the test. */
+public class ListingDiffTest {
+
+  @Test
+  public void sameApartmentsHaveNoChanges() {
+    ListingDiff diff = ListingDiff.compare(batch(withIds(apartments())), withIds(apartments()));
+
+    Assert.assertTrue(diff.isEmpty(), diff.getReport());
+    Assert.assertEquals(diff.getUnchangedCount(), 4);
+  }
+
+  @Test
+  public void apartmentsAreMatchedById() {
+    List<Apartment> current = withIds(apartments());
+    current.get(0).setRent(990);
+    current.get(1).setAddress("Hauptstraße 2");
+    current.remove(3);
+    Apartment added = new Apartment("Neu", "Am Markt 3", "2", 48, "1. OG", 700, "01.08.2021");
+    added.setId("1-9");
+    current.add(added);
+
+    ListingDiff diff = ListingDiff.compare(batch(withIds(apartments())), current);
+
+    Assert.assertEquals(diff.getCount(ChangeType.CHANGED), 2, diff.getReport());
+    Assert.assertEquals(diff.getCount(ChangeType.ADDED), 1, diff.getReport());
+    Assert.assertEquals(diff.getCount(ChangeType.REMOVED), 1, diff.getReport());
+    Assert.assertEquals(diff.getUnchangedCount(), 1);
+    Change rent = find(diff, ChangeType.CHANGED, "1-0");
+    Assert.assertEquals(rent.getChangedFields(), EnumSet.of(Field.RENT));
+    Assert.assertEquals(rent.getBefore().getRent(), 890);
+    Assert.assertEquals(rent.getAfter().getRent(), 990);
+    // matched by id, so a changed address is a change and not an added and a removed apartment
+    Assert.assertEquals(
+        find(diff, ChangeType.CHANGED, "1-1").getChangedFields(), EnumSet.of(Field.ADDRESS));
+    Assert.assertEquals(find(diff, ChangeType.ADDED, "1-9").getAfter().getTitle(), "Neu");
+    Assert.assertEquals(find(diff, ChangeType.REMOVED, "1-3").getBefore().getTitle(), "Studio");
+  }
+
+  @Test
+  public void baselineWithoutIdsIsMatchedByValues() {
+    List<Apartment> current = withIds(apartments());
+    current.get(2).setRent(560);
+
+    ListingDiff diff = ListingDiff.compare(batch(apartments()), current);
+
+    Assert.assertEquals(diff.getCount(ChangeType.ADDED), 0, diff.getReport());
+    Assert.assertEquals(diff.getCount(ChangeType.REMOVED), 0, diff.getReport());
+    Assert.assertEquals(diff.getCount(ChangeType.CHANGED), 1, diff.getReport());
+    Assert.assertEquals(diff.getUnchangedCount(), 3);
+  }
+
+  @Test
+  public void baselineWithSomeIdsIsMatchedByValues() {
+    List<Apartment> baseline = withIds(apartments());
+    baseline.get(1).setId(null);
+
+    ListingDiff diff = ListingDiff.compare(batch(baseline), withIds(apartments()));
+
+    Assert.assertTrue(diff.isEmpty(), diff.getReport());
+    Assert.assertEquals(diff.getUnchangedCount(), 4);
+  }
+
+  @Test
+  public void currentApartmentsWithoutIdsAreMatchedByValues() {
+    List<Apartment> current = withIds(apartments());
+    current.get(0).setId(null);
+    current.get(3).setId(null);
+    current.get(3).setTitle("Studio mit Balkon");
+
+    ListingDiff diff = ListingDiff.compare(batch(withIds(apartments())), current);
+
+    Assert.assertEquals(diff.getCount(ChangeType.ADDED), 0, diff.getReport());
+    Assert.assertEquals(diff.getCount(ChangeType.REMOVED), 0, diff.getReport());
+    Assert.assertEquals(
+        diff.getChanges().get(0).getChangedFields(), EnumSet.of(Field.TITLE), diff.getReport());
+    Assert.assertEquals(diff.getUnchangedCount(), 3);
+  }
+
+  @Test
+  public void baselineApartmentsWithTheSameKeyAreMatchedOneByOne() {
+    // two flats with the same address, floor, size and rooms, and no ids
+    List<Apartment> baseline = apartments();
+    baseline.add(copy(baseline.get(0)));
+    baseline.add(copy(baseline.get(0)));
+
+    ListingDiff twoLeft = ListingDiff.compare(batch(baseline), apartments());
+    Assert.assertEquals(twoLeft.getCount(ChangeType.REMOVED), 2, twoLeft.getReport());
+    Assert.assertEquals(twoLeft.getUnchangedCount(), 4);
+
+    List<Apartment> current = apartments();
+    current.add(copy(current.get(0)));
+    ListingDiff oneLeft = ListingDiff.compare(batch(baseline), current);
+    Assert.assertEquals(oneLeft.getCount(ChangeType.REMOVED), 1, oneLeft.getReport());
+    Assert.assertEquals(oneLeft.getCount(ChangeType.ADDED), 0, oneLeft.getReport());
+    Assert.assertEquals(oneLeft.getUnchangedCount(), 5);
+
+    current.add(copy(current.get(0)));
+    current.add(copy(current.get(0)));
+    ListingDiff oneMore = ListingDiff.compare(batch(baseline), current);
+    Assert.assertEquals(oneMore.getCount(ChangeType.REMOVED), 0, oneMore.getReport());
+    Assert.assertEquals(oneMore.getCount(ChangeType.ADDED), 1, oneMore.getReport());
+  }
+
+  @Test
+  public void baselineApartmentsWithTheSameIdAreAllReported() {
+    List<Apartment> baseline = withIds(apartments());
+    baseline.add(copy(baseline.get(2)));
+
+    ListingDiff diff = ListingDiff.compare(batch(baseline), withIds(apartments()));
+
+    Assert.assertEquals(diff.getCount(ChangeType.REMOVED), 1, diff.getReport());
+    Assert.assertEquals(find(diff, ChangeType.REMOVED, "1-2").getBefore().getTitle(), "Loft");
+  }
+
+  @Test
+  public void currentApartmentWithAnIdSeenBeforeIsIgnored() {
+    List<Apartment> current = withIds(apartments());
+    current.add(copy(current.get(1)));
+
+    ListingDiff diff = ListingDiff.compare(batch(withIds(apartments())), current);
+
+    Assert.assertTrue(diff.isEmpty(), diff.getReport());
+    Assert.assertEquals(diff.getUnchangedCount(), 4);
+  }
+
+  @Test
+  public void streamingModeEmitsTheRemovedApartmentsWhenFinished() {
+    List<Change> changes = new ArrayList<>();
+    ListingDiff diff = new ListingDiff(batch(withIds(apartments())), changes::add);
+    Apartment added = new Apartment("Neu", "Am Markt 3", "2", 48, "1. OG", 700, "01.08.2021");
+    added.setId("1-9");
+
+    diff.accept(added);
+    Assert.assertEquals(types(changes), Arrays.asList(ChangeType.ADDED));
+
+    diff.finish();
+    Assert.assertEquals(
+        types(changes),
+        Arrays.asList(
+            ChangeType.ADDED,
+            ChangeType.REMOVED,
+            ChangeType.REMOVED,
+            ChangeType.REMOVED,
+            ChangeType.REMOVED));
+    Assert.assertTrue(diff.getChanges().isEmpty());
+    Assert.assertThrows(IllegalStateException.class, () -> diff.accept(added));
+  }
+
+  private static Change find(ListingDiff diff, ChangeType type, String key) {
+    return diff.getChanges()
+        .stream()
+        .filter(change -> change.getType() == type && change.getKey().equals(key))
+        .findFirst()
+        .orElseThrow(() -> new AssertionError(type + " " + key + " in " + diff.getReport()));
+  }
+
+  private static List<ChangeType> types(List<Change> changes) {
+    return changes.stream().map(Change::getType).collect(Collectors.toList());
+  }
+
+  private static ApartmentBatch batch(List<Apartment> apartments) {
+    return ApartmentBatch.of(apartments);
+  }
+
+  private static Apartment copy(Apartment apartment) {
+    Apartment copy =
+        new Apartment(
+            apartment.getTitle(),
+            apartment.getAddress(),
+            apartment.getRooms(),
+            apartment.getSize(),
+            apartment.getFloor(),
+            apartment.getRent(),
+            apartment.getAvailableFrom());
+    copy.setId(apartment.getId());
+    return copy;
+  }
+
+  private static List<Apartment> withIds(List<Apartment> apartments) {
+    for (int i = 0; i < apartments.size(); i++) {
+      apartments.get(i).setId("1-" + i);
+    }
+    return apartments;
+  }
+
+  private static List<Apartment> apartments() {
+    return new ArrayList<>(
+        Arrays.asList(
+            new Apartment("Altbau", "Müllerstraße 35", "3", 72, "2. OG", 890, "01.05.2021"),
+            new Apartment("Neubau", "Hauptstraße 1", "2,5", 55, "EG", 640, "sofort"),
+            new Apartment("Loft", "Am Hafen 7", "1", 38, null, 510, "15.06.2021"),
+            new Apartment("Studio", "Ringstraße 12", "1", 30, "5. OG", 450, "01.07.2021")));
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.ApartmentBatch;
+import com.akelius.automation.data.CompactApartment;
+import com.akelius.automation.data.ListingSnapshotFile;
+
+/** Runs without a browser: writes snapshot files to a temporary directory and reads them back. */
+public class ListingSnapshotFileTest {
+
+  private Path directory;
+  private Path file;
+
+  @BeforeMethod
+  public void createFile() throws IOException {
+    directory = Files.createTempDirectory("snapshots");
+    file = directory.resolve("listings.snap");
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+    Files.deleteIfExists(directory);
+  }
+
+  @Test
+  public void appendedSnapshotsAreReadBack() throws IOException {
+    List<Apartment> berlin = apartments("1-", 3);
+    List<Apartment> hamburg = apartments("2-", 2);
+    ListingSnapshotFile.append(file, "Berlin", 1000, ApartmentBatch.of(berlin));
+    ListingSnapshotFile.append(file, "Hamburg", 2000, ApartmentBatch.of(hamburg));
+    ListingSnapshotFile.append(file, "Berlin", 3000, ApartmentBatch.of(berlin.subList(0, 1)));
+
+    ListingSnapshotFile snapshots = ListingSnapshotFile.open(file);
+    Assert.assertEquals(snapshots.getSegments().size(), 3);
+    Assert.assertEquals(snapshots.getSegments("Berlin").size(), 2);
+
+    ListingSnapshotFile.Segment latest = snapshots.findLatest("Berlin").get();
+    Assert.assertEquals(latest.getTimestamp(), 3000);
+    Assert.assertEquals(latest.size(), 1);
+    ListingSnapshotFile.Segment earlier = snapshots.findLatestBefore("Berlin", 3000).get();
+    Assert.assertEquals(toApartments(earlier.toBatch()), berlin);
+    Assert.assertEquals(earlier.getId(2), "1-2");
+    Assert.assertEquals(earlier.getRooms(1), 2.5f);
+    Assert.assertEquals(toApartments(snapshots.findLatest("Hamburg").get().toBatch()), hamburg);
+    Assert.assertFalse(snapshots.findLatest("Munich").isPresent());
+  }
+
+  @Test
+  public void appendAfterAnInterruptedWriteKeepsTheLaterSnapshots() throws IOException {
+    ListingSnapshotFile.append(file, "Berlin", 1000, ApartmentBatch.of(apartments("1-", 3)));
+    long firstEnd = Files.size(file);
+    ListingSnapshotFile.append(file, "Hamburg", 2000, ApartmentBatch.of(apartments("2-", 4)));
+    // the run writing the second segment died halfway through it
+    truncate(firstEnd + (Files.size(file) - firstEnd) / 2);
+    Assert.assertEquals(ListingSnapshotFile.open(file).getSegments().size(), 1);
+
+    List<Apartment> munich = apartments("3-", 2);
+    ListingSnapshotFile.append(file, "Munich", 3000, ApartmentBatch.of(munich));
+    ListingSnapshotFile.append(file, "Berlin", 4000, ApartmentBatch.of(apartments("1-", 1)));
+
+    ListingSnapshotFile snapshots = ListingSnapshotFile.open(file);
+    Assert.assertEquals(
+        snapshots.getSegments().stream().map(ListingSnapshotFile.Segment::getCity).toArray(),
+        new String[] {"Berlin", "Munich", "Berlin"});
+    Assert.assertEquals(toApartments(snapshots.findLatest("Munich").get().toBatch()), munich);
+    Assert.assertEquals(snapshots.findLatest("Berlin").get().getTimestamp(), 4000);
+  }
+
+  @Test
+  public void appendAfterATornHeaderKeepsTheLaterSnapshots() throws IOException {
+    ListingSnapshotFile.append(file, "Berlin", 1000, ApartmentBatch.of(apartments("1-", 3)));
+    long firstEnd = Files.size(file);
+    ListingSnapshotFile.append(file, "Hamburg", 2000, ApartmentBatch.of(apartments("2-", 4)));
+    truncate(firstEnd + 5);
+
+    ListingSnapshotFile.append(file, "Munich", 3000, ApartmentBatch.of(apartments("3-", 2)));
+
+    ListingSnapshotFile snapshots = ListingSnapshotFile.open(file);
+    Assert.assertEquals(snapshots.getSegments().size(), 2);
+    Assert.assertTrue(snapshots.findLatest("Munich").isPresent());
+  }
+
+  @Test
+  public void appendRefusesToOverwriteDataThatIsNotASnapshot() throws IOException {
+    ListingSnapshotFile.append(file, "Berlin", 1000, ApartmentBatch.of(apartments("1-", 3)));
+    byte[] foreign = new byte[64];
+    Arrays.fill(foreign, (byte) 0x7F);
+    Files.write(file, foreign, StandardOpenOption.APPEND);
+    long size = Files.size(file);
+
+    ApartmentBatch munich = ApartmentBatch.of(apartments("3-", 1));
+    Assert.assertThrows(
+        IOException.class, () -> ListingSnapshotFile.append(file, "Munich", 2000, munich));
+    Assert.assertEquals(Files.size(file), size);
+    Assert.assertEquals(ListingSnapshotFile.open(file).getSegments().size(), 1);
+  }
+
+  private void truncate(long size) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(size);
+    }
+  }
+
+  private static List<Apartment> apartments(String idPrefix, int count) {
+    List<Apartment> apartments =
+        Arrays.asList(
+            new Apartment("Altbau", "Müllerstraße 35", "3", 72, "2. OG", 890, "01.05.2021"),
+            new Apartment("Neubau", "Hauptstraße 1", "2,5", 55, "EG", 640, "sofort"),
+            new Apartment("Loft", "Am Hafen 7", "1", 38, null, 510, "15.06.2021"),
+            new Apartment("Dachgeschoss", "Ringstraße 12", "4", 96, "5. OG", 1400, "01.07.2021"));
+    for (int i = 0; i < apartments.size(); i++) {
+      apartments.get(i).setId(idPrefix + i);
+    }
+    return apartments.subList(0, count);
+  }
+
+  private static List<Apartment> toApartments(ApartmentBatch batch) {
+    return batch.stream().map(CompactApartment::toApartment).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.akelius.automation.server.FixtureData;
+import com.akelius.automation.server.FixtureServer;
+import com.akelius.automation.server.LocalProxy;
+
+/**
+ * Runs without a browser: sends raw HTTP/1.1 requests to the local proxy in front of the fixture
+ * server, whose landing page is chunked and whose detail pages declare their length.
+ */
+public class LocalProxyTest {
+
+  private static final String FONT_PATTERN = "*.woff2";
+  private static final String IMAGE_PATTERN = "*/images/*";
+
+  private FixtureServer fixtureServer;
+  private URI website;
+  private LocalProxy proxy;
+
+  @BeforeClass
+  public void startFixtureServer() {
+    fixtureServer = new FixtureServer(FixtureData.getDefaultApartments(), 0, 0);
+    website = URI.create(fixtureServer.start(0));
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopFixtureServer() {
+    fixtureServer.stop();
+  }
+
+  @BeforeMethod
+  public void startProxy() {
+    proxy = new LocalProxy(Arrays.asList(FONT_PATTERN, IMAGE_PATTERN));
+    proxy.start(0);
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void stopProxy() {
+    proxy.stop();
+  }
+
+  @Test
+  public void blockedFontsAndImagesAreAnsweredWithoutTheWebsite() throws IOException {
+    try (Socket socket = connectToProxy()) {
+      Response font = send(socket, "/assets/fonts/akelius.woff2");
+      Response image = send(socket, "/assets/images/map-tile.png");
+
+      Assert.assertEquals(font.status, 204, "The font was not blocked.");
+      Assert.assertEquals(image.status, 204, "The image was not blocked.");
+      Assert.assertEquals(image.body.length, 0, "A blocked response has no body.");
+    }
+    Assert.assertEquals(proxy.getBlockedCount(), 2);
+    Assert.assertEquals(proxy.getBlockedCountByPattern().get(FONT_PATTERN), Long.valueOf(1));
+    Assert.assertEquals(proxy.getBlockedCountByPattern().get(IMAGE_PATTERN), Long.valueOf(1));
+    Assert.assertEquals(proxy.getDownloadedBytes(), 0, "A blocked request reached the website.");
+  }
+
+  @Test
+  public void chunkedResponsesAreRelayedIntact() throws IOException {
+    Response direct;
+    try (Socket socket = new Socket(website.getHost(), website.getPort())) {
+      direct = sendRequest(socket, "/en_UK/");
+    }
+    Response proxied;
+    try (Socket socket = connectToProxy()) {
+      proxied = send(socket, "/en_UK/");
+    }
+
+    Assert.assertEquals(proxied.status, 200);
+    Assert.assertEquals(
+        proxied.getHeader("Transfer-Encoding"), "chunked", "The body lost its chunks.");
+    Assert.assertTrue(proxied.chunks > 0, "No chunk was relayed.");
+    Assert.assertEquals(
+        new String(proxied.body, StandardCharsets.UTF_8),
+        new String(direct.body, StandardCharsets.UTF_8),
+        "The body changed on its way through the proxy.");
+  }
+
+  @Test
+  public void keepAliveConnectionsServeSeveralRequests() throws IOException {
+    try (Socket socket = connectToProxy()) {
+      Response landingPage = send(socket, "/en_UK/");
+      Response detailPage = send(socket, "/en_UK/detail/1-1");
+      Response font = send(socket, "/assets/fonts/akelius.woff2");
+      Response otherDetailPage = send(socket, "/en_UK/detail/1-2");
+
+      for (Response response : Arrays.asList(landingPage, detailPage, otherDetailPage)) {
+        Assert.assertEquals(response.status, 200);
+        Assert.assertEquals(response.getHeader("Connection"), "keep-alive");
+      }
+      Assert.assertNotNull(detailPage.getHeader("Content-Length"));
+      Assert.assertEquals(font.status, 204);
+    }
+    Assert.assertEquals(proxy.getRequestCount(), 4);
+  }
+
+  private Socket connectToProxy() throws IOException {
+    return new Socket(InetAddress.getLoopbackAddress(), proxy.getPort());
+  }
+
+  /** Sends a request for a path of the fixture server through the proxy. */
+  private Response send(Socket socket, String path) throws IOException {
+    return sendRequest(socket, website.resolve(path).toString());
+  }
+
+  /** @param target The path for the website itself, the absolute URL for the proxy. */
+  private Response sendRequest(Socket socket, String target) throws IOException {
+    OutputStream output = socket.getOutputStream();
+    output.write(
+        String.format(
+                "GET %s HTTP/1.1\r\nHost: %s\r\n\r\n", target, website.getRawAuthority())
+            .getBytes(StandardCharsets.ISO_8859_1));
+    output.flush();
+    return Response.read(socket.getInputStream());
+  }
+
+  /** A response read byte by byte, so the next response of the connection stays in the stream. */
+  private static class Response {
+
+    private int status;
+    private final Map<String, String> headers = new HashMap<>();
+    private byte[] body;
+    private int chunks;
+
+    static Response read(InputStream input) throws IOException {
+      Response response = new Response();
+      String statusLine = readLine(input);
+      Assert.assertFalse(statusLine.isEmpty(), "The connection was closed before the response.");
+      response.status = Integer.parseInt(statusLine.split(" ")[1]);
+      for (String line = readLine(input); !line.isEmpty(); line = readLine(input)) {
+        int separator = line.indexOf(':');
+        response.headers.put(
+            line.substring(0, separator).trim().toLowerCase(Locale.ROOT),
+            line.substring(separator + 1).trim());
+      }
+
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      if ("chunked".equals(response.getHeader("Transfer-Encoding"))) {
+        for (int size = Integer.parseInt(readLine(input).trim(), 16);
+            size > 0;
+            size = Integer.parseInt(readLine(input).trim(), 16)) {
+          copy(input, body, size);
+          readLine(input);
+          response.chunks++;
+        }
+        readLine(input);
+      } else if (response.getHeader("Content-Length") != null) {
+        copy(input, body, Integer.parseInt(response.getHeader("Content-Length")));
+      }
+      response.body = body.toByteArray();
+      return response;
+    }
+
+    String getHeader(String name) {
+      return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    private static void copy(InputStream input, OutputStream output, int length)
+        throws IOException {
+      for (int i = 0; i < length; i++) {
+        int read = input.read();
+        Assert.assertNotEquals(read, -1, "The body ended after " + i + " bytes.");
+        output.write(read);
+      }
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      for (int read = input.read(); read != -1 && read != '\n'; read = input.read()) {
+        if (read != '\r') {
+          line.write(read);
+        }
+      }
+      return line.toString(StandardCharsets.ISO_8859_1.name());
+    }
+  }
+}
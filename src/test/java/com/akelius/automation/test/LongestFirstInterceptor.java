@@ -0,0 +1,56 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+
+/**
+ * Starts the longest tests first when the suite runs in parallel, so a long test doesn't start last
+ * and keep the run going alone at the end. The methods that depend on each other are ordered as a
+ * whole, by their total duration in the history ({@link TestDurations}), and keep their order
+ * within the group. A sequential run keeps its order.
+ */
+public class LongestFirstInterceptor implements IMethodInterceptor {
+
+  @Override
+  public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+    if (!context.getSuite().getXmlSuite().getParallel().isParallel()) {
+      return methods;
+    }
+
+    TestDurations durations = TestDurations.load();
+    List<List<Integer>> groups = DependencyGroups.of(methods);
+    // a stable sort, so groups with the same duration keep their order
+    groups.sort(
+        Comparator.comparingDouble(
+                (List<Integer> group) ->
+                    group
+                        .stream()
+                        .mapToDouble(
+                            method ->
+                                durations.getExpectedMillis(
+                                    TestDurations.getName(methods.get(method).getMethod())))
+                        .sum())
+            .reversed());
+
+    List<IMethodInstance> orderedMethods = new ArrayList<>(methods.size());
+    groups.forEach(group -> group.forEach(method -> orderedMethods.add(methods.get(method))));
+    return orderedMethods;
+  }
+}
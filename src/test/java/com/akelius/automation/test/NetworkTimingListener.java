@@ -0,0 +1,49 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.Reporter;
+
+import com.akelius.automation.core.NetworkTimingCollector;
+import com.akelius.automation.core.NetworkTimingCollector.LatencySummary;
+
+/** Adds the network latency percentiles collected during the run to the TestNG report. */
+public class NetworkTimingListener implements ISuiteListener {
+
+  protected static final Logger logger = LogManager.getLogger(NetworkTimingListener.class);
+
+  @Override
+  public void onStart(ISuite suite) {
+    NetworkTimingCollector.reset();
+  }
+
+  @Override
+  public void onFinish(ISuite suite) {
+    if (!NetworkTimingCollector.isEnabled()) {
+      return;
+    }
+
+    List<LatencySummary> summary = NetworkTimingCollector.getSummary();
+    Reporter.log(String.format("Network latency by URL pattern (%s patterns):", summary.size()));
+    for (LatencySummary latency : summary) {
+      Reporter.log(latency.toString());
+      logger.info("Network latency: " + latency);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.util.List;
+
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+
+import com.akelius.automation.core.PerformanceBudgets;
+
+/** Flags the performance budgets that were exceeded while a test was running on its result. */
+public class PerformanceBudgetListener implements IInvokedMethodListener {
+
+  public static final String VIOLATIONS_ATTRIBUTE = "performanceBudgetViolations";
+
+  @Override
+  public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {
+    // drop anything left behind by configuration methods running on the same thread
+    PerformanceBudgets.drainViolations();
+  }
+
+  @Override
+  public void afterInvocation(IInvokedMethod method, ITestResult testResult) {
+    List<String> violations = PerformanceBudgets.drainViolations();
+    if (!method.isTestMethod() || violations.isEmpty()) {
+      return;
+    }
+
+    testResult.setAttribute(VIOLATIONS_ATTRIBUTE, violations);
+    Reporter.setCurrentTestResult(testResult);
+    violations.forEach(it -> Reporter.log("Performance budget exceeded: " + it));
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+
+import com.akelius.automation.data.TestData;
+
+/**
+ * Runs only the share of the test methods that belongs to one shard, so the suite can be split
+ * across CI nodes with -Dshards=N -Dshard=[0..N-1]. The methods that depend on each other (through
+ * dependsOnMethods or dependsOnGroups) always end up in the same shard. The groups of methods are
+ * balanced by their historical durations ({@link TestDurations}), the longest first into the shard
+ * with the least work so far, and the ties are broken by name so every node computes the same
+ * plan.
+ */
+public class ShardInterceptor implements IMethodInterceptor {
+
+  protected static final Logger logger = LogManager.getLogger(ShardInterceptor.class);
+
+  @Override
+  public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+    if (TestData.SHARD_COUNT <= 1) {
+      return methods;
+    }
+    if (TestData.SHARD_INDEX < 0 || TestData.SHARD_INDEX >= TestData.SHARD_COUNT) {
+      throw new IllegalArgumentException(
+          String.format(
+              "The shard must be between 0 and %s, but it is %s.",
+              TestData.SHARD_COUNT - 1, TestData.SHARD_INDEX));
+    }
+
+    int[] shards = plan(methods, TestDurations.load(), TestData.SHARD_COUNT);
+    List<IMethodInstance> shardMethods = new ArrayList<>();
+    for (int i = 0; i < methods.size(); i++) {
+      if (shards[i] == TestData.SHARD_INDEX) {
+        shardMethods.add(methods.get(i));
+      }
+    }
+
+    logger.info(
+        String.format(
+            "Running shard %s of %s: %s",
+            TestData.SHARD_INDEX,
+            TestData.SHARD_COUNT,
+            shardMethods
+                .stream()
+                .map(method -> TestDurations.getName(method.getMethod()))
+                .collect(Collectors.toList())));
+    return shardMethods;
+  }
+
+  /**
+   * Assigns the methods to the shards.
+   *
+   * @param methods The methods to split.
+   * @param durations The historical durations of the methods.
+   * @param shardCount The number of shards.
+   * @return The shard of each method, in the order of the methods.
+   */
+  static int[] plan(List<IMethodInstance> methods, TestDurations durations, int shardCount) {
+    List<ShardGroup> groups = new ArrayList<>();
+    for (List<Integer> dependencyGroup : DependencyGroups.of(methods)) {
+      ShardGroup group = new ShardGroup();
+      for (int method : dependencyGroup) {
+        String name = TestDurations.getName(methods.get(method).getMethod());
+        group.add(method, name, durations.getExpectedMillis(name));
+      }
+      groups.add(group);
+    }
+    groups.sort(
+        Comparator.comparingDouble((ShardGroup group) -> group.millis)
+            .reversed()
+            .thenComparing(group -> group.firstName));
+
+    double[] loads = new double[shardCount];
+    int[] shards = new int[methods.size()];
+    for (ShardGroup group : groups) {
+      int shard = 0;
+      for (int i = 1; i < shardCount; i++) {
+        if (loads[i] < loads[shard]) {
+          shard = i;
+        }
+      }
+      loads[shard] += group.millis;
+      for (int method : group.methods) {
+        shards[method] = shard;
+      }
+    }
+
+    logger.info("Planned shard durations (ms): " + Arrays.toString(loads));
+    return shards;
+  }
+
+  /** Methods that have to run in the same shard because they depend on each other. */
+  private static class ShardGroup {
+
+    private final List<Integer> methods = new ArrayList<>();
+    private String firstName;
+    private double millis;
+
+    private void add(int method, String name, double durationMillis) {
+      methods.add(method);
+      if (firstName == null || name.compareTo(firstName) < 0) {
+        firstName = name;
+      }
+      millis += durationMillis;
+    }
+  }
+}
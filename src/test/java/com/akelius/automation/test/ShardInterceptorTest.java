@@ -0,0 +1,209 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.IMethodInstance;
+import org.testng.ITestNGMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Runs without a browser: plans shards for stand-in test methods, which only answer what the
+ * dependency groups and the durations look at.
+ */
+public class ShardInterceptorTest {
+
+  @Test
+  public void independentMethodsAreGroupedAlone() {
+    List<IMethodInstance> methods =
+        Arrays.asList(method(Search.class, "a"), method(Search.class, "b"));
+
+    Assert.assertEquals(DependencyGroups.of(methods), groups(new int[] {0}, new int[] {1}));
+  }
+
+  @Test
+  public void dependsOnMethodsGroupsWithinTheSameClass() {
+    List<IMethodInstance> methods =
+        Arrays.asList(
+            method(Search.class, "open"),
+            method(Contact.class, "open"),
+            method(Search.class, "filter", "open"),
+            method(Contact.class, "send"));
+
+    Assert.assertEquals(
+        DependencyGroups.of(methods), groups(new int[] {0, 2}, new int[] {1}, new int[] {3}));
+  }
+
+  @Test
+  public void dependsOnMethodsAcceptsQualifiedNamesAndRegularExpressions() {
+    List<IMethodInstance> methods =
+        Arrays.asList(
+            method(Search.class, "openList"),
+            method(Search.class, "openMap"),
+            method(Contact.class, "send", Search.class.getName() + ".open.*"),
+            method(Contact.class, "other"),
+            method(Contact.class, "broken", "open[("));
+
+    Assert.assertEquals(
+        DependencyGroups.of(methods),
+        groups(new int[] {0, 1, 2}, new int[] {3}, new int[] {4}));
+  }
+
+  @Test
+  public void dependsOnGroupsAndChainsAreMerged() {
+    String[] none = new String[0];
+    String[] setUp = new String[] {"setUp"};
+    List<IMethodInstance> methods =
+        Arrays.asList(
+            instance(Search.class, "a", none, setUp, none),
+            instance(Contact.class, "b", none, none, none),
+            instance(Search.class, "login", none, none, setUp),
+            instance(Contact.class, "c", new String[] {"b"}, setUp, none),
+            method(Search.class, "d"));
+
+    Assert.assertEquals(
+        DependencyGroups.of(methods), groups(new int[] {0, 1, 2, 3}, new int[] {4}));
+  }
+
+  @Test
+  public void planKeepsDependentMethodsTogether() {
+    List<IMethodInstance> methods =
+        Arrays.asList(
+            method(Search.class, "open"),
+            method(Search.class, "filter", "open"),
+            method(Search.class, "sort", "filter"),
+            method(Contact.class, "send"),
+            method(Contact.class, "cancel"));
+
+    int[] shards = ShardInterceptor.plan(methods, new TestDurations(), 2);
+
+    Assert.assertEquals(shards[1], shards[0]);
+    Assert.assertEquals(shards[2], shards[0]);
+    // the three dependent methods weigh the most, the two others go to the other shard
+    Assert.assertEquals(shards[3], 1 - shards[0]);
+    Assert.assertEquals(shards[4], 1 - shards[0]);
+  }
+
+  @Test
+  public void planBalancesByHistoricalDurations() {
+    List<IMethodInstance> methods =
+        Arrays.asList(
+            method(Search.class, "a"),
+            method(Search.class, "b"),
+            method(Search.class, "c"),
+            method(Search.class, "d"),
+            method(Search.class, "e"));
+    TestDurations durations = new TestDurations();
+    durations.add(name("a"), 100);
+    durations.add(name("b"), 60);
+    durations.add(name("c"), 50);
+    durations.add(name("d"), 10);
+    durations.add(name("d"), 30);
+    // e never ran, so it counts as the mean of the others: (100 + 60 + 50 + 20) / 4
+
+    int[] shards = ShardInterceptor.plan(methods, durations, 2);
+
+    // longest first into the least loaded shard: a(100) b(60) e(57.5) c(50) d(20)
+    Assert.assertEquals(shards, new int[] {0, 1, 0, 1, 1});
+  }
+
+  @Test
+  public void planIsTheSameWhateverTheOrderOfTheMethods() {
+    List<IMethodInstance> methods = new ArrayList<>();
+    for (String name : new String[] {"d", "b", "a", "c"}) {
+      methods.add(method(Search.class, name));
+    }
+
+    // without history every method weighs the same, the ties are broken by name
+    Assert.assertEquals(
+        ShardInterceptor.plan(methods, new TestDurations(), 3), new int[] {0, 1, 0, 2});
+  }
+
+  private static String name(String method) {
+    return Search.class.getName() + "." + method;
+  }
+
+  private static List<List<Integer>> groups(int[]... groups) {
+    List<List<Integer>> lists = new ArrayList<>();
+    for (int[] group : groups) {
+      List<Integer> list = new ArrayList<>();
+      for (int method : group) {
+        list.add(method);
+      }
+      lists.add(list);
+    }
+    return lists;
+  }
+
+  private static IMethodInstance method(
+      Class<?> testClass, String name, String... dependsOnMethods) {
+    return instance(testClass, name, dependsOnMethods, new String[0], new String[0]);
+  }
+
+  private static IMethodInstance instance(
+      Class<?> testClass,
+      String name,
+      String[] dependsOnMethods,
+      String[] dependsOnGroups,
+      String[] groups) {
+    ITestNGMethod testMethod =
+        (ITestNGMethod)
+            Proxy.newProxyInstance(
+                ShardInterceptorTest.class.getClassLoader(),
+                new Class<?>[] {ITestNGMethod.class},
+                (proxy, method, args) -> {
+                  switch (method.getName()) {
+                    case "getRealClass":
+                      return testClass;
+                    case "getMethodName":
+                      return name;
+                    case "getQualifiedName":
+                      return testClass.getName() + "." + name;
+                    case "getMethodsDependedUpon":
+                      return dependsOnMethods;
+                    case "getGroupsDependedUpon":
+                      return dependsOnGroups;
+                    case "getGroups":
+                      return groups;
+                    case "hashCode":
+                      return System.identityHashCode(proxy);
+                    case "equals":
+                      return proxy == args[0];
+                    case "toString":
+                      return testClass.getSimpleName() + "." + name;
+                    default:
+                      throw new UnsupportedOperationException(method.getName());
+                  }
+                });
+    return (IMethodInstance)
+        Proxy.newProxyInstance(
+            ShardInterceptorTest.class.getClassLoader(),
+            new Class<?>[] {IMethodInstance.class},
+            (proxy, method, args) -> {
+              if (method.getName().equals("getMethod")) {
+                return testMethod;
+              }
+              throw new UnsupportedOperationException(method.getName());
+            });
+  }
+
+  /** Stand-ins for the classes the methods belong to. */
+  private static class Search {}
+
+  private static class Contact {}
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+
+import com.akelius.automation.data.TestData;
+
+/**
+ * Measures every test method and every step of it ({@link BaseTest#step(String)}), flags the
+ * durations that are beyond the history of the test on its result, and appends the durations of the
+ * run to the history ({@link TestDurations}) when the suite is finished.
+ */
+public class TestDurationListener implements IInvokedMethodListener, ISuiteListener {
+
+  protected static final Logger logger = LogManager.getLogger(TestDurationListener.class);
+  public static final String OUTLIERS_ATTRIBUTE = "durationOutliers";
+
+  private static final ThreadLocal<StepClock> stepClock = new ThreadLocal<>();
+  private static final Queue<String> records = new ConcurrentLinkedQueue<>();
+  private static volatile TestDurations history = new TestDurations();
+
+  /**
+   * Ends the current step of the test running on this thread, if any, and starts the next one.
+   *
+   * @return The number of the step that was started, starting at 1.
+   */
+  public static int startStep() {
+    StepClock clock = stepClock.get();
+    if (clock == null) {
+      // a step outside of a test method, e.g. in a configuration method
+      return 1;
+    }
+    return clock.next();
+  }
+
+  @Override
+  public void onStart(ISuite suite) {
+    history = TestDurations.load();
+    records.clear();
+  }
+
+  @Override
+  public void onFinish(ISuite suite) {
+    if (records.isEmpty()) {
+      return;
+    }
+
+    List<String> runRecords = new ArrayList<>(records);
+    records.clear();
+    try {
+      TestDurations.append(Paths.get(TestData.TEST_DURATIONS_FILE), runRecords);
+    } catch (IOException e) {
+      logger.warn("Failed to save the test durations. Exception = " + e);
+    }
+  }
+
+  @Override
+  public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {
+    if (method.isTestMethod()) {
+      stepClock.set(new StepClock());
+    }
+  }
+
+  @Override
+  public void afterInvocation(IInvokedMethod method, ITestResult testResult) {
+    StepClock clock = stepClock.get();
+    if (!method.isTestMethod() || clock == null) {
+      return;
+    }
+    stepClock.remove();
+    clock.next();
+
+    String status = testResult.isSuccess() ? TestDurations.STATUS_SUCCESS : "FAILURE";
+    long timestamp = testResult.getStartMillis();
+    List<String> outliers = new ArrayList<>();
+    record(
+        TestDurations.getName(method.getTestMethod()),
+        testResult.getEndMillis() - testResult.getStartMillis(),
+        timestamp,
+        status,
+        outliers);
+    for (int step = 0; step < clock.stepDurations.size(); step++) {
+      record(
+          TestDurations.getStepName(method.getTestMethod(), step + 1),
+          clock.stepDurations.get(step),
+          timestamp,
+          status,
+          outliers);
+    }
+
+    if (!outliers.isEmpty()) {
+      testResult.setAttribute(OUTLIERS_ATTRIBUTE, outliers);
+      Reporter.setCurrentTestResult(testResult);
+      outliers.forEach(
+          it -> {
+            logger.warn("Duration beyond the history: " + it);
+            Reporter.log("Duration beyond the history: " + it);
+          });
+    }
+  }
+
+  private static void record(
+      String name, long durationMillis, long timestamp, String status, List<String> outliers) {
+    records.add(TestDurations.toRecord(name, durationMillis, timestamp, status));
+    if (history.isOutlier(name, durationMillis)) {
+      outliers.add(
+          String.format(
+              "%s took %s ms, the mean is %.0f ms and the standard deviation %.0f ms over %s runs",
+              name,
+              durationMillis,
+              history.getMeanMillis(name),
+              history.getStandardDeviationMillis(name),
+              history.getSampleCount(name)));
+    }
+  }
+
+  /** Measures the steps of the test method running on a thread. */
+  private static class StepClock {
+
+    private final List<Long> stepDurations = new ArrayList<>();
+    private long stepStart;
+    private boolean inStep;
+
+    /** Ends the current step, if any, and starts the next one. */
+    private int next() {
+      long now = System.currentTimeMillis();
+      if (inStep) {
+        stepDurations.add(now - stepStart);
+      }
+      inStep = true;
+      stepStart = now;
+      return stepDurations.size() + 1;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright 2020 Hassan Radi
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * <p>See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.akelius.automation.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.testng.ITestNGMethod;
+
+import com.akelius.automation.data.TestData;
+
+/**
+ * The history of the durations of the test methods and of their steps, stored in the CSV file given
+ * by the testDurations property. Each run appends one line per test method and step with its name,
+ * its duration in milliseconds, the time of the run and the status of the test. Only the durations
+ * of the tests that passed are used for the statistics.
+ */
+public class TestDurations {
+
+  protected static final Logger logger = LogManager.getLogger(TestDurations.class);
+  public static final String CSV_SEPARATOR = ",";
+  public static final String CSV_HEADER = "test,durationMillis,timestamp,status";
+  public static final String STATUS_SUCCESS = "SUCCESS";
+  /** Separates the name of a test method from the name of one of its steps. */
+  public static final String STEP_SEPARATOR = "#";
+
+  // the count, the sum and the sum of the squares of the durations of each test
+  private final Map<String, double[]> totals = new HashMap<>();
+
+  /** @return The durations of the file given by the testDurations property. */
+  public static TestDurations load() {
+    return load(Paths.get(TestData.TEST_DURATIONS_FILE));
+  }
+
+  /**
+   * @param file The CSV file to read.
+   * @return The durations of the file, empty if the file doesn't exist or can't be read.
+   */
+  public static TestDurations load(Path file) {
+    TestDurations durations = new TestDurations();
+    if (!Files.exists(file)) {
+      return durations;
+    }
+
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] columns = line.split(CSV_SEPARATOR);
+        if (columns.length < 2 || (columns.length > 3 && !STATUS_SUCCESS.equals(columns[3]))) {
+          continue;
+        }
+        try {
+          durations.add(columns[0].trim(), Double.parseDouble(columns[1].trim()));
+        } catch (NumberFormatException e) {
+          // the header or a damaged line
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Failed to read the test durations from " + file + ". Exception = " + e);
+    }
+    return durations;
+  }
+
+  /**
+   * Appends the durations of a run to the file, creating it with a header if it doesn't exist.
+   *
+   * @param file The CSV file to write.
+   * @param records The lines to append, without the line separator.
+   */
+  public static synchronized void append(Path file, List<String> records) throws IOException {
+    boolean newFile = !Files.exists(file);
+    try (Writer writer =
+        Files.newBufferedWriter(
+            file,
+            StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND)) {
+      if (newFile) {
+        writer.write(CSV_HEADER + System.lineSeparator());
+      }
+      for (String record : records) {
+        writer.write(record + System.lineSeparator());
+      }
+    }
+  }
+
+  /**
+   * @param name The name of the test or step.
+   * @param durationMillis Its duration.
+   * @param timestamp The time of the run, in epoch milliseconds.
+   * @param status The status of the test.
+   * @return A line of the file.
+   */
+  public static String toRecord(String name, long durationMillis, long timestamp, String status) {
+    return String.join(
+        CSV_SEPARATOR,
+        name.replace(CSV_SEPARATOR, " "),
+        String.valueOf(durationMillis),
+        String.valueOf(timestamp),
+        status);
+  }
+
+  /** @return The name the durations of a test method are stored under. */
+  public static String getName(ITestNGMethod method) {
+    return method.getQualifiedName();
+  }
+
+  /** @return The name the durations of a step of a test method are stored under. */
+  public static String getStepName(ITestNGMethod method, int step) {
+    return getName(method) + STEP_SEPARATOR + "STEP " + step;
+  }
+
+  /**
+   * @param name The qualified name of the test.
+   * @param durationMillis One of its durations.
+   */
+  public void add(String name, double durationMillis) {
+    double[] total = totals.computeIfAbsent(name, k -> new double[3]);
+    total[0]++;
+    total[1] += durationMillis;
+    total[2] += durationMillis * durationMillis;
+  }
+
+  /** @return True if no duration is known. */
+  public boolean isEmpty() {
+    return totals.isEmpty();
+  }
+
+  /** @return The number of durations known for the test. */
+  public int getSampleCount(String name) {
+    double[] total = totals.get(name);
+    return total == null ? 0 : (int) total[0];
+  }
+
+  /**
+   * @param name The qualified name of the test.
+   * @return The mean duration of the test in milliseconds, or -1 if it never ran.
+   */
+  public double getMeanMillis(String name) {
+    double[] total = totals.get(name);
+    return total == null ? -1 : total[1] / total[0];
+  }
+
+  /**
+   * @param name The qualified name of the test.
+   * @return The standard deviation of the durations of the test in milliseconds, 0 if unknown.
+   */
+  public double getStandardDeviationMillis(String name) {
+    double[] total = totals.get(name);
+    if (total == null || total[0] < 2) {
+      return 0;
+    }
+    double mean = total[1] / total[0];
+    // the sample variance, guarded against rounding below zero
+    return Math.sqrt(Math.max(0, (total[2] - total[0] * mean * mean) / (total[0] - 1)));
+  }
+
+  /** @return The mean duration of all the test methods in milliseconds, or -1 if none ran. */
+  public double getOverallMeanMillis() {
+    return totals
+        .keySet()
+        .stream()
+        .filter(name -> !name.contains(STEP_SEPARATOR))
+        .mapToDouble(this::getMeanMillis)
+        .average()
+        .orElse(-1);
+  }
+
+  /**
+   * @param name The qualified name of the test.
+   * @return The mean duration of the test, or the mean of all the tests if it never ran, or 1 if
+   *     no test ever ran, so tests without history still count for something.
+   */
+  public double getExpectedMillis(String name) {
+    double millis = getMeanMillis(name);
+    if (millis < 0) {
+      millis = getOverallMeanMillis();
+    }
+    return millis > 0 ? millis : 1;
+  }
+
+  /**
+   * Checks a duration against the history of the test: it's an outlier if it's more than {@link
+   * TestData#DURATION_OUTLIER_DEVIATIONS} standard deviations above the mean, once the test has
+   * {@link TestData#DURATION_OUTLIER_MIN_SAMPLES} durations. The margin is at least {@link
+   * TestData#DURATION_OUTLIER_MIN_MARGIN} of the mean, so tests with very stable durations are not
+   * flagged for a few milliseconds.
+   *
+   * @param name The qualified name of the test.
+   * @param durationMillis The duration to check.
+   * @return True if the duration is beyond the historical distribution of the test.
+   */
+  public boolean isOutlier(String name, double durationMillis) {
+    if (getSampleCount(name) < TestData.DURATION_OUTLIER_MIN_SAMPLES) {
+      return false;
+    }
+    double mean = getMeanMillis(name);
+    double margin =
+        Math.max(
+            TestData.DURATION_OUTLIER_DEVIATIONS * getStandardDeviationMillis(name),
+            TestData.DURATION_OUTLIER_MIN_MARGIN * mean);
+    return durationMillis > mean + margin;
+  }
+}
@@ -13,49 +13,59 @@
 package com.akelius.automation.test;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.akelius.automation.components.ApartmentSearchResultComponent;
 import com.akelius.automation.components.ContactFormComponent;
+import com.akelius.automation.core.BrowserCheckpoint;
+import com.akelius.automation.core.WaitEngine;
+import com.akelius.automation.data.Apartment;
+import com.akelius.automation.data.ApartmentDuplicateIndex;
 import com.akelius.automation.data.TestData;
 import com.akelius.automation.pages.ApartmentPage;
 import com.akelius.automation.pages.LandingPage;
+import com.akelius.automation.pages.LandingPageQuery;
 import com.akelius.automation.util.Helper;
 
+/**
+ * The tests don't depend on each other: each one restores a checkpoint of the browser state it
+ * starts from, which is created through the UI by the first test that needs it.
+ */
 public class WebTests extends BaseTest {
 
-  private LandingPage landingPage;
-  private List<ApartmentSearchResultComponent> apartmentSearchResults;
-  private ApartmentPage apartmentPage;
+  private static final String APARTMENT_DETAILS_CHECKPOINT = "firstApartmentDetails";
 
   @Test
   public void changeLanguage() {
-    logger.info("STEP 1 - Navigating to the website.");
-    landingPage = navigateToLandingPage();
+    step("Navigating to the website.");
+    LandingPage landingPage = navigateToLandingPage();
 
-    logger.info("STEP 2 - Changing the language to 'en_UK'...");
+    step("Changing the language to 'en_UK'...");
     landingPage.changeLanguageToEnUk();
 
     logger.info("Verify #1: Verify that the language has been changed...");
-    new WebDriverWait(driver, TestData.TEN_SECONDS, TestData.HALF_SECOND_IN_MILLI)
+    new WaitEngine(getDriver(), TestData.TEN_SECONDS_IN_MILLI)
         .until(ExpectedConditions.urlContains(TestData.EN_UK_LOCALE));
     Assert.assertTrue(
-        driver.getCurrentUrl().contains(TestData.EN_UK_LOCALE),
+        getDriver().getCurrentUrl().contains(TestData.EN_UK_LOCALE),
         "Failed to change country to the UK.");
   }
 
-  @Test(dependsOnMethods = "changeLanguage")
+  @Test
   public void filterByCityAndSize() {
-    logger.info("STEP 1 - Filter by city 'Berlin'.");
+    step("Open the website in 'en_UK'.");
+    LandingPage landingPage = openLandingPageInEnUk();
+
+    step("Filter by city 'Berlin'.");
     landingPage.selectCity(TestData.CITY);
 
-    logger.info(
+    step(
         String.format(
-            "STEP 2 - Filter by apartment size [min = %s, max= %s].",
+            "Filter by apartment size [min = %s, max= %s].",
             TestData.SLIDER_MIN_VALUE, TestData.SLIDER_MAX_VALUE));
     landingPage.selectSize(TestData.SLIDER_MIN_VALUE, TestData.SLIDER_MAX_VALUE);
 
@@ -71,21 +81,26 @@ public class WebTests extends BaseTest {
 
     logger.info("Verify #2: Verify that the displayed number of apartments is correct.");
     int apartmentCountBefore = landingPage.getApartmentCount();
-    apartmentSearchResults = landingPage.getAllApartments();
+    List<ApartmentSearchResultComponent> apartmentSearchResults = landingPage.getAllApartments();
     Assert.assertEquals(
         apartmentSearchResults.size(),
         apartmentCountBefore,
         "Incorrect number of apartments is displayed.");
 
     logger.info("Verify #3: Verify that each apartment is displayed only once.");
-    Assert.assertTrue(landingPage.areApartmentValuesUnique(), "Apartment values are not unique.");
+    ApartmentDuplicateIndex duplicateIndex = new ApartmentDuplicateIndex();
+    List<Apartment> apartments =
+        landingPage.streamApartments(duplicateIndex).collect(Collectors.toList());
+    Assert.assertTrue(
+        LandingPage.areApartmentValuesUnique(duplicateIndex), "Apartment values are not unique.");
+    saveListingSnapshot(TestData.CITY, apartments);
 
-    logger.info("STEP 3 - Show the results by map.");
+    step("Show the results by map.");
     landingPage.toggleView();
     logger.info("Verify #4: Verify that the map view is displayed.");
     Assert.assertTrue(landingPage.isMapView(), "Map view is not displayed.");
 
-    logger.info("STEP 4 - Show the results by list again.");
+    step("Show the results by list again.");
     landingPage.toggleView();
     logger.info(
         "Verify #5: Verify that the list view is displayed and the number of results is the same.");
@@ -93,11 +108,15 @@ public class WebTests extends BaseTest {
         landingPage.getApartmentCount(), apartmentCountBefore, "Apartment count has changed.");
   }
 
-  @Test(dependsOnMethods = "filterByCityAndSize")
+  @Test
   public void checkApartmentDetails() {
-    logger.info("STEP 1 - Clicking on the first apartment from the search results.");
-    String apartmentTitle = apartmentSearchResults.get(0).getTitleText();
-    apartmentPage = apartmentSearchResults.get(0).navigateToApartment();
+    step("Open the search results filtered by city and size.");
+    LandingPage landingPage = openFilteredResults();
+
+    step("Clicking on the first apartment from the search results.");
+    ApartmentSearchResultComponent firstApartment = landingPage.getAllApartments().get(0);
+    String apartmentTitle = firstApartment.getTitleText();
+    ApartmentPage apartmentPage = firstApartment.navigateToApartment();
 
     logger.info("Verify #1: Verify that text writen in the title is the address of the apartment.");
     Assert.assertEquals(
@@ -106,13 +125,16 @@ public class WebTests extends BaseTest {
     logger.info("Verify #2: Verify that The 'id' of the apartment matches the id in the URL.");
     Assert.assertEquals(
         apartmentPage.getApartmentId(),
-        Helper.extractGroupFromRegex(TestData.APARTMENT_ID_REGEX, driver.getCurrentUrl()),
+        Helper.extractGroupFromRegex(TestData.APARTMENT_ID_REGEX, getDriver().getCurrentUrl()),
         "Incorrect apartment ID is displayed on the website.");
   }
 
-  @Test(dependsOnMethods = "checkApartmentDetails")
+  @Test
   public void checkContactFormValidations() {
-    logger.info("STEP 1 - Clicking on the 'Contact' button.");
+    step("Open the details of the first apartment of the filtered search results.");
+    ApartmentPage apartmentPage = openFirstApartmentDetails();
+
+    step("Clicking on the 'Contact' button.");
     ContactFormComponent contactForm = apartmentPage.contactApartmentOwner();
 
     logger.info(
@@ -152,4 +174,27 @@ public class WebTests extends BaseTest {
         TestData.PHONE_NUMBER_INVALID_FORMAT_ERROR_MESSAGE_ENG,
         "Incorrect error message.");
   }
+
+  /** @return The landing page in 'en_UK', opened through its deep link. */
+  private LandingPage openLandingPageInEnUk() {
+    return navigateToLandingPage(TestData.EN_UK_LOCALE);
+  }
+
+  /** @return The search results filtered by city and size, loaded through one deep link. */
+  private LandingPage openFilteredResults() {
+    return new LandingPageQuery()
+        .locale(TestData.EN_UK_LOCALE)
+        .city(TestData.CITY)
+        .size(TestData.SLIDER_MIN_VALUE, TestData.SLIDER_MAX_VALUE)
+        .open();
+  }
+
+  /** @return The details of the first filtered apartment, restored from their checkpoint. */
+  private ApartmentPage openFirstApartmentDetails() {
+    BrowserCheckpoint.restoreOrCreate(
+        APARTMENT_DETAILS_CHECKPOINT,
+        getDriver(),
+        () -> openFilteredResults().getAllApartments().get(0).navigateToApartment());
+    return new ApartmentPage();
+  }
 }